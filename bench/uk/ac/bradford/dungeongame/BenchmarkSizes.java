@@ -0,0 +1,46 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * Helpers shared by the benchmarks for reading their parameters. Level sizes
+ * are given to JMH as strings such as "256x256", so each size is one value of
+ * a single parameter rather than every width being run with every height.
+ */
+final class BenchmarkSizes {
+
+    private BenchmarkSizes() {
+    }
+
+    /**
+     * Returns the width part of a size parameter
+     *
+     * @param size a size such as "256x256"
+     * @return the width in tiles
+     */
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    /**
+     * Returns the height part of a size parameter
+     *
+     * @param size a size such as "256x256"
+     * @return the height in tiles
+     */
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    /**
+     * Returns the number of monsters to spawn for a monster count parameter.
+     * Counts that would leave no room for the player are cut down to half the
+     * cells of the level, so on the default 25x18 level 5000 monsters runs
+     * with 225.
+     *
+     * @param size a size such as "256x256"
+     * @param monsters the monster count parameter
+     * @return the number of monsters to spawn
+     */
+    static int monsters(String size, int monsters) {
+        return Math.min(monsters, width(size) * height(size) / 2);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks each level layout algorithm on its own, without the rolls and
+ * the connectivity pass generateLevel() adds. Divide the score by the number
+ * of cells in the level to compare the sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CarveBenchmarks {
+
+    @Param({"25x18", "256x256", "1024x1024"})
+    public String size;
+
+    @Param({"noise", "rooms", "caves", "drunkard"})
+    public String algorithm;
+
+    private LevelGenerator generator;
+    private byte[] cells;
+    private int width;
+    private int height;
+    private final RandomStream rng = new RandomStream(1);
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkSizes.width(size);
+        height = BenchmarkSizes.height(size);
+        cells = new byte[width * height];
+        LevelGenerator[] generators = {new NoiseGenerator(10), new RoomsGenerator(),
+            new CaveGenerator(), new DrunkardGenerator()};
+        for (LevelGenerator g : generators) {
+            if (g.getName().equals(algorithm)) {
+                generator = g;
+            }
+        }
+        if (generator == null) {
+            throw new IllegalArgumentException("No layout algorithm called " + algorithm);
+        }
+    }
+
+    @Benchmark
+    public byte[] carve() {
+        Arrays.fill(cells, LevelGenerator.WALL);
+        generator.carve(cells, width, height, rng);
+        return cells;
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks Canvas.drawDungeon() into an offscreen BufferedImage the size of
+ * the game window. Run from the project folder, as the Canvas loads its
+ * images from the assets folder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawBenchmarks {
+
+    /**
+     * The size of the image drawn into, the same as the area of the game
+     * window
+     */
+    private static final int VIEW_WIDTH = 800;
+    private static final int VIEW_HEIGHT = 576;
+
+    @Param({"25x18", "256x256", "1024x1024"})
+    public String size;
+
+    @Param({"3", "40", "200", "5000"})
+    public int monsters;
+
+    private Canvas canvas;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    /**
+     * A HeadlessView that keeps the last frame it was given, so it can be
+     * handed to the Canvas
+     */
+    static class CapturingView extends HeadlessView {
+
+        FrameSnapshot frame;
+
+        @Override
+        public void updateDisplay(FrameSnapshot frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public boolean wantsFrames() {
+            return true;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        CapturingView view = new CapturingView();
+        GameEngine engine = new GameEngine(view, 5, BenchmarkSizes.width(size),
+                BenchmarkSizes.height(size));
+        engine.loadLevel(BenchmarkSizes.monsters(size, monsters));
+        engine.doTurn();
+        canvas = new Canvas();
+        canvas.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        canvas.update(view.frame);
+        image = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage drawDungeon() {
+        canvas.drawDungeon(g);
+        return image;
+    }
+}
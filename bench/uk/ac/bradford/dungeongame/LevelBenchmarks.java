@@ -0,0 +1,71 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the work done once per level that does not depend on the
+ * monsters: generating the level, finding the spawn cells and a full flow
+ * field search. These live in their own source folder so they are not part
+ * of the game, but they are in the game's package so they can call the
+ * engine's package-private methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LevelBenchmarks {
+
+    @Param({"25x18", "256x256", "1024x1024"})
+    public String size;
+
+    private GameEngine engine;
+    private TileMap level;
+    private FlowField field;
+    private int width;
+    private int height;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkSizes.width(size);
+        height = BenchmarkSizes.height(size);
+        engine = new GameEngine(new HeadlessView(), 1, width, height);
+        level = engine.generateLevel();
+        field = new FlowField(width, height);
+    }
+
+    @Benchmark
+    public TileMap generateLevel() {
+        return engine.generateLevel();
+    }
+
+    @Benchmark
+    public SpawnIndex getSpawns() {
+        return engine.getSpawns();
+    }
+
+    /**
+     * A full search from the middle of a generated level. The source moves
+     * each time, as a search from the same source is not redone.
+     *
+     * @return the field
+     */
+    @Benchmark
+    public FlowField flowField() {
+        field.compute(level, width / 2 + (step++ & 1), height / 2, null);
+        return field;
+    }
+}
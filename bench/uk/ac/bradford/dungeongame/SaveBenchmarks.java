@@ -0,0 +1,70 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks saving a game to a file and loading it back. Loading also
+ * starts generating the next level in the background, which the next load
+ * waits for, as it would in a game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SaveBenchmarks {
+
+    @Param({"25x18", "256x256", "1024x1024"})
+    public String size;
+
+    @Param({"3", "40", "200", "5000"})
+    public int monsters;
+
+    private GameEngine engine;
+    private GameEngine loaded;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        int width = BenchmarkSizes.width(size);
+        int height = BenchmarkSizes.height(size);
+        engine = new GameEngine(new HeadlessView(), 6, width, height);
+        engine.loadLevel(BenchmarkSizes.monsters(size, monsters));
+        loaded = new GameEngine(new HeadlessView(), 7, width, height);
+        file = Files.createTempFile("dungeon", ".sav");
+        engine.save(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public GameEngine saveGame() throws IOException {
+        engine.save(file);
+        return engine;
+    }
+
+    @Benchmark
+    public GameEngine loadGame() throws IOException {
+        loaded.load(file);
+        return loaded;
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks spawnMonsters() on its own. After each call the cells the
+ * monsters took are put back in the spawn index, so every call starts from
+ * the same free cells. That needs a fixture around every call, which JMH
+ * times call by call, so the scores for a few monsters also include some of
+ * JMH's own timing cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpawnBenchmarks {
+
+    @Param({"25x18", "256x256", "1024x1024"})
+    public String size;
+
+    @Param({"3", "40", "200", "5000"})
+    public int monsters;
+
+    private GameEngine engine;
+    private SpawnIndex spawns;
+    private EntityStore spawned;
+    private int width;
+    private int count;
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkSizes.width(size);
+        count = BenchmarkSizes.monsters(size, monsters);
+        engine = new GameEngine(new HeadlessView(), 2, width, BenchmarkSizes.height(size));
+        //the engine's own index, filled with every floor of the first level
+        spawns = engine.getSpawns();
+    }
+
+    @TearDown(Level.Invocation)
+    public void freeCells() {
+        for (int i = 0; i < spawned.size(); i++) {
+            spawns.add(spawned.getX(i) + spawned.getY(i) * width);
+        }
+    }
+
+    @Benchmark
+    public EntityStore spawnMonsters() {
+        spawned = engine.spawnMonsters(count);
+        return spawned;
+    }
+}
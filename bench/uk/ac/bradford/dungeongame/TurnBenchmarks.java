@@ -0,0 +1,75 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks setting up a level and playing turns on it: loadLevel() (which
+ * is generateLevel(), getSpawns(), spawnMonsters() and placing the player),
+ * moving the monsters on their own, and a whole doTurn().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TurnBenchmarks {
+
+    @Param({"25x18", "256x256", "1024x1024"})
+    public String size;
+
+    @Param({"3", "40", "200", "5000"})
+    public int monsters;
+
+    private GameEngine engine;
+    private int count;
+
+    @Setup
+    public void setUp() {
+        count = BenchmarkSizes.monsters(size, monsters);
+        engine = new GameEngine(new HeadlessView(), 3, BenchmarkSizes.width(size),
+                BenchmarkSizes.height(size));
+        engine.loadLevel(count);
+    }
+
+    @Benchmark
+    public GameEngine loadLevel() {
+        engine.loadLevel(count);
+        return engine;
+    }
+
+    @Benchmark
+    public GameEngine moveMonsters() {
+        engine.moveMonsters();
+        return engine;
+    }
+
+    /**
+     * A whole turn. Monsters chase the player, so the player is healed to
+     * keep the game going, and the game starts again if the monsters still
+     * win.
+     *
+     * @return the engine
+     */
+    @Benchmark
+    public GameEngine doTurn() {
+        Entity player = engine.getPlayer();
+        player.changeHealth(player.getMaxHealth());
+        if (engine.doTurn() != GameEngine.GameState.PLAYING) {
+            engine.startGame();
+            engine.loadLevel(count);
+        }
+        return engine;
+    }
+}
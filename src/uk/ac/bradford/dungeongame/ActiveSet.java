@@ -0,0 +1,113 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+
+/**
+ * The ActiveSet class holds the slots of the monsters that are awake this
+ * turn. Monsters are awake while they are inside a square around the player;
+ * the rest are asleep and cost nothing. A monster wakes up as soon as the
+ * square reaches the cell it is standing in.
+ *
+ * When a level has more monsters than the square has cells, the set is found
+ * by reading the occupancy grid over the square, so the cost depends on the
+ * size of the square and not on how many monsters the level has, and the
+ * slots are in the order their cells were read, row by row. Otherwise each
+ * monster is checked, which is cheaper, and the slots are in slot order.
+ * Either way the set only depends on where the monsters are standing, so a
+ * seeded game always wakes the same monsters in the same order. The array
+ * is kept between turns and only grows.
+ */
+public class ActiveSet {
+
+    /**
+     * The slots of the awake monsters. Only the first size elements are in
+     * use.
+     */
+    private int[] slots = new int[16];
+
+    /**
+     * The number of awake monsters
+     */
+    private int size;
+
+    /**
+     * Wakes the monsters inside a square and puts every other monster to
+     * sleep. The square is cut off at the edges of the level.
+     *
+     * @param occupancy the occupancy grid of the level
+     * @param monsters the monsters on the level
+     * @param width the width of the level
+     * @param height the height of the level
+     * @param x the X co-ordinate of the middle of the square
+     * @param y the Y co-ordinate of the middle of the square
+     * @param radius the distance from the middle of the square to its edges
+     */
+    public void collect(OccupancyGrid occupancy, EntityStore monsters, int width, int height,
+            int x, int y, int radius) {
+        size = 0;
+        int left = Math.max(0, x - radius);
+        int top = Math.max(0, y - radius);
+        int right = Math.min(width - 1, x + radius);
+        int bottom = Math.min(height - 1, y + radius);
+        if (monsters.size() < (right - left + 1) * (bottom - top + 1)) {
+            //fewer monsters than cells, so check the monsters instead
+            for (int i = 0; i < monsters.size(); i++) {
+                if (Math.abs(monsters.getX(i) - x) <= radius && Math.abs(monsters.getY(i) - y) <= radius) {
+                    add(i);
+                }
+            }
+            return;
+        }
+        for (int j = top; j <= bottom; j++) {
+            for (int i = left; i <= right; i++) {
+                int id = occupancy.get(i, j);
+                if (id > OccupancyGrid.EMPTY) {
+                    add(OccupancyGrid.monsterIndex(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wakes every monster, in slot order
+     *
+     * @param count the number of monsters on the level
+     */
+    public void all(int count) {
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            add(i);
+        }
+    }
+
+    /**
+     * Adds a slot to the end of the set
+     *
+     * @param slot the slot of the monster
+     */
+    private void add(int slot) {
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        slots[size++] = slot;
+    }
+
+    /**
+     * Returns the number of awake monsters
+     *
+     * @return the number of slots in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of an awake monster
+     *
+     * @param k the position in the set, from 0 to size() - 1
+     * @return the slot of the monster in the monsters store
+     */
+    public int get(int k) {
+        return slots[k];
+    }
+}
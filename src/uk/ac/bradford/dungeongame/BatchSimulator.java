@@ -0,0 +1,191 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class is an entry point that plays many complete games with a
+ * ScriptedPlayer and reports statistics about them, for tuning the depth
+ * tables used when generating levels and spawning monsters. Game i is played
+ * with the seed baseSeed + i, so any game can be replayed, and the games are
+ * split across all cores using a ForkJoinPool.
+ *
+ * Arguments (all optional): number of games, base seed, number of threads,
+ * level width, level height.
+ */
+public class BatchSimulator {
+
+    /**
+     * The most turns a single game is allowed to run for before it is counted
+     * as stuck
+     */
+    public static final int MAX_TURNS = 20000;
+
+    /**
+     * Games are played in blocks of this size on a single thread
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * The deepest level in the dungeon
+     */
+    private static final int MAX_DEPTH = 40;
+
+    /**
+     * The combined results of a set of games
+     */
+    static class Stats {
+
+        int games;
+        int wins;
+        int deaths;
+        int stuck;
+        long turns;
+        int[] deathsAtDepth = new int[MAX_DEPTH + 1];
+
+        /**
+         * Adds the result of one finished game
+         */
+        void add(GameEngine engine, int turn) {
+            games++;
+            turns += turn;
+            switch (engine.getState()) {
+                case WON:
+                    wins++;
+                    break;
+                case LOST:
+                    deaths++;
+                    deathsAtDepth[Math.min(engine.getDepth(), MAX_DEPTH)]++;
+                    break;
+                default:
+                    stuck++;
+            }
+        }
+
+        /**
+         * Adds the results of another set of games to this one
+         */
+        Stats combine(Stats other) {
+            games += other.games;
+            wins += other.wins;
+            deaths += other.deaths;
+            stuck += other.stuck;
+            turns += other.turns;
+            for (int d = 0; d <= MAX_DEPTH; d++) {
+                deathsAtDepth[d] += other.deathsAtDepth[d];
+            }
+            return this;
+        }
+
+        /**
+         * Returns the average depth the player died at
+         */
+        double meanDeathDepth() {
+            long sum = 0;
+            for (int d = 0; d <= MAX_DEPTH; d++) {
+                sum += (long) d * deathsAtDepth[d];
+            }
+            return deaths == 0 ? 0 : (double) sum / deaths;
+        }
+    }
+
+    /**
+     * Fork/join task that plays a range of games, splitting the range in half
+     * until it is small enough to play on one thread
+     */
+    static class SimulateTask extends RecursiveTask<Stats> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long baseSeed;
+        private final int from;
+        private final int to;
+        private final int width;
+        private final int height;
+
+        SimulateTask(long baseSeed, int from, int to, int width, int height) {
+            this.baseSeed = baseSeed;
+            this.from = from;
+            this.to = to;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= BLOCK_SIZE) {
+                Stats stats = new Stats();
+                for (int i = from; i < to; i++) {
+                    playGame(baseSeed + i, width, height, stats);
+                }
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            SimulateTask left = new SimulateTask(baseSeed, from, mid, width, height);
+            left.fork();
+            Stats right = new SimulateTask(baseSeed, mid, to, width, height).compute();
+            return left.join().combine(right);
+        }
+    }
+
+    /**
+     * Plays a single game to the end with a ScriptedPlayer
+     *
+     * @param seed the seed for the game
+     * @param width the width of each level
+     * @param height the height of each level
+     * @param stats the statistics the result is added to
+     */
+    static void playGame(long seed, int width, int height, Stats stats) {
+        ScriptedPlayer bot = new ScriptedPlayer(~seed);
+        GameEngine engine = new GameEngine(bot, seed, width, height);
+        int turn = 0;
+        while (engine.getState() == GameEngine.GameState.PLAYING && turn < MAX_TURNS) {
+            bot.playTurn(engine);
+            turn++;
+        }
+        stats.add(engine, turn);
+    }
+
+    /**
+     * Plays a number of games on a pool of threads
+     *
+     * @param games the number of games to play
+     * @param baseSeed the seed of the first game
+     * @param threads the number of threads to use
+     * @param width the width of each level
+     * @param height the height of each level
+     * @return the combined results of every game
+     */
+    public static Stats simulate(int games, long baseSeed, int threads, int width, int height) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new SimulateTask(baseSeed, 0, games, width, height));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        long baseSeed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int width = args.length > 4 ? Integer.parseInt(args[3]) : GameEngine.DUNGEON_WIDTH;
+        int height = args.length > 4 ? Integer.parseInt(args[4]) : GameEngine.DUNGEON_HEIGHT;
+        long start = System.nanoTime();
+        Stats stats = simulate(games, baseSeed, threads, width, height);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("games:            %d on %d threads in %.2fs (%.0f games/s)%n",
+                stats.games, threads, seconds, stats.games / seconds);
+        System.out.printf("win rate:         %.2f%%%n", 100.0 * stats.wins / stats.games);
+        System.out.printf("deaths:           %d (mean depth %.2f)%n", stats.deaths, stats.meanDeathDepth());
+        System.out.printf("stuck:            %d%n", stats.stuck);
+        System.out.printf("turns per game:   %.1f%n", (double) stats.turns / stats.games);
+        System.out.println("deaths by depth:");
+        for (int d = 1; d <= MAX_DEPTH; d++) {
+            if (stats.deathsAtDepth[d] > 0) {
+                System.out.printf("  %2d: %d%n", d, stats.deathsAtDepth[d]);
+            }
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * Internal class used to draw elements within a JPanel. The Canvas class loads
+ * images from an asset folder inside the main project folder.
+ *
+ * @author prtrundl
+ */
+class Canvas extends JPanel {
+
+    private BufferedImage floor;
+    private BufferedImage wall;
+    private BufferedImage player;
+    private BufferedImage monster;
+    private BufferedImage stairs;
+    private BufferedImage chest;
+
+    FrameSnapshot currentFrame; //the current tiles, player and monsters to display
+
+    /**
+     * The camera keeps the player at least this many tiles away from the edge
+     * of the screen, unless the edge of the level is reached
+     */
+    static final int CAMERA_MARGIN = 4;
+
+    /**
+     * The position of the top left tile on the screen
+     */
+    int cameraX;
+    int cameraY;
+
+    /**
+     * A cached image of the explored tiles on screen. It is redrawn when the
+     * camera moves, the screen is resized or a tile changes, only the newly
+     * explored cells are drawn into it when more of the level is explored,
+     * and the player and monsters are drawn on top of it each frame.
+     */
+    private BufferedImage tileLayer;
+    private TileMap layerTiles;         //the snapshot the cached image was drawn from
+    private int layerX;                 //the camera position it was drawn at
+    private int layerY;
+    private int layerExploredVersion;   //the explored version it was drawn at
+    private boolean[] layerExplored = new boolean[0]; //which cells on screen it has drawn
+
+    /**
+     * What was drawn in each cell on screen at the last update, used to work
+     * out which cells need to be repainted. lastIds holds EMPTY, PLAYER or
+     * MONSTER, plus EXPLORED if the tile has been explored, and lastBars
+     * holds a value that changes when that entity's health bar does. nextIds
+     * and nextBars are filled in for the new frame and then swapped with them.
+     */
+    private int[] lastIds = new int[0];
+    private int[] lastBars = new int[0];
+    private int[] nextIds = new int[0];
+    private int[] nextBars = new int[0];
+
+    /**
+     * What can be in a cell on screen
+     */
+    private static final int EMPTY = 0;
+    private static final int PLAYER = 1;
+    private static final int MONSTER = 2;
+    private static final int EXPLORED = 4;
+
+    /**
+     * How long combat, chest and error messages are shown for, in
+     * milliseconds
+     */
+    static final int COMBAT_MESSAGE_MILLIS = 500;
+    static final int CHEST_MESSAGE_MILLIS = 1500;
+    static final int ERROR_MESSAGE_MILLIS = 4000;
+
+    /**
+     * The most messages shown at once. When another message arrives the
+     * oldest one is dropped.
+     */
+    static final int MAX_MESSAGES = 6;
+
+    /**
+     * Where messages are drawn on the canvas and the size of each line
+     */
+    private static final int MESSAGE_X = 8;
+    private static final int MESSAGE_Y = 8;
+    private static final int MESSAGE_WIDTH = 240;
+    private static final int MESSAGE_HEIGHT = 20;
+    private static final Color MESSAGE_BACKGROUND = new Color(0, 0, 0, 170);
+
+    /**
+     * Ring buffer of the messages currently shown. messageHead is the index of
+     * the oldest message and messageCount is how many there are.
+     */
+    private final String[] messages = new String[MAX_MESSAGES];
+    private final long[] messageExpiry = new long[MAX_MESSAGES];
+    private final boolean[] messageIsItem = new boolean[MAX_MESSAGES];
+    private int messageHead;
+    private int messageCount;
+
+    /**
+     * A single timer that removes messages once they have been shown for long
+     * enough. It only runs while there are messages on screen.
+     */
+    private final Timer messageTimer = new Timer(100, e -> expireMessages());
+
+    /**
+     * Constructor that loads tile images for use in this class
+     */
+    public Canvas() {
+        loadTileImages();
+    }
+
+    /**
+     * Loads tiles images from a fixed folder location within the project
+     * directory
+     */
+    private void loadTileImages() {
+        try {
+            floor = ImageIO.read(new File("assets/floor.png"));
+            assert floor.getHeight() == GameGUI.TILE_HEIGHT
+                    && floor.getWidth() == GameGUI.TILE_WIDTH;
+            wall = ImageIO.read(new File("assets/wall.png"));
+            assert wall.getHeight() == GameGUI.TILE_HEIGHT
+                    && wall.getWidth() == GameGUI.TILE_WIDTH;
+            player = ImageIO.read(new File("assets/player.png"));
+            assert player.getHeight() == GameGUI.TILE_HEIGHT
+                    && player.getWidth() == GameGUI.TILE_WIDTH;
+            monster = ImageIO.read(new File("assets/monster.png"));
+            assert monster.getHeight() == GameGUI.TILE_HEIGHT
+                    && monster.getWidth() == GameGUI.TILE_WIDTH;
+            stairs = ImageIO.read(new File("assets/stairs.png"));
+            assert stairs.getHeight() == GameGUI.TILE_HEIGHT
+                    && stairs.getWidth() == GameGUI.TILE_WIDTH;
+            chest = ImageIO.read(new File("assets/chest.png")); //commented out for future implementation
+            assert chest.getHeight() == GameGUI.TILE_HEIGHT
+                    && chest.getWidth() == GameGUI.TILE_WIDTH;
+
+        } catch (IOException e) {
+            System.out.println("Exception loading images: " + e.getMessage());
+            e.printStackTrace(System.out);
+        }
+    }
+
+    /**
+     * Updates the current graphics on the screen to display the tiles, player
+     * and monsters
+     *
+     * @param frame The snapshot of the level, player and monsters to display
+     */
+    public void update(FrameSnapshot frame) {
+        //a new level was loaded, so start with the player in the middle
+        boolean newLevel = currentFrame == null
+                || !frame.getTiles().isSameLevel(currentFrame.getTiles());
+        int oldX = cameraX;
+        int oldY = cameraY;
+        currentFrame = frame;
+        moveCamera(newLevel);
+        //only the cells an entity left or entered need drawing again, unless
+        //the whole tile layer is out of date. snapshots never change, so a
+        //different snapshot means the tiles have changed.
+        boolean fullRepaint = newLevel || cameraX != oldX || cameraY != oldY
+                || frame.getTiles() != layerTiles;
+        repaintChangedCells(fullRepaint);
+    }
+
+    /**
+     * Compares what is in each cell on screen with what was there at the last
+     * update and repaints the cells that have changed. This covers entities
+     * moving, dying and having their health bars change.
+     *
+     * @param fullRepaint true to repaint the whole canvas anyway
+     */
+    private void repaintChangedCells(boolean fullRepaint) {
+        int w = viewWidth();
+        int h = viewHeight();
+        if (lastIds.length != w * h) {
+            //the screen changed size
+            lastIds = new int[w * h];
+            lastBars = new int[w * h];
+            nextIds = new int[w * h];
+            nextBars = new int[w * h];
+            fullRepaint = true;
+        }
+        Arrays.fill(nextIds, EMPTY);
+        Arrays.fill(nextBars, 0);
+        FrameSnapshot f = currentFrame;
+        FieldOfView sight = f.getSight();
+        int right = cameraX + w;
+        int bottom = cameraY + h;
+        //record the explored tiles on screen, so newly explored ones are drawn
+        int levelRight = Math.min(right, f.getTiles().getWidth());
+        int levelBottom = Math.min(bottom, f.getTiles().getHeight());
+        for (int y = cameraY; y < levelBottom; y++) {
+            for (int x = cameraX; x < levelRight; x++) {
+                if (sight == null || sight.isExplored(x, y)) {
+                    nextIds[(x - cameraX) + (y - cameraY) * w] = EXPLORED;
+                }
+            }
+        }
+        //record the monsters that can be seen on screen, found through the
+        //buckets they are in
+        int bucketsX = f.getBucketsX();
+        int bucketsY = f.getBucketsY();
+        for (int by = cameraY >> FrameSnapshot.BUCKET_SHIFT; by <= (bottom - 1) >> FrameSnapshot.BUCKET_SHIFT && by < bucketsY; by++) {
+            for (int bx = cameraX >> FrameSnapshot.BUCKET_SHIFT; bx <= (right - 1) >> FrameSnapshot.BUCKET_SHIFT && bx < bucketsX; bx++) {
+                int b = f.bucket(bx, by);
+                for (int p = f.getBucketStart(b); p < f.getBucketEnd(b); p++) {
+                    int m = f.getBucketMonster(p);
+                    int x = f.getMonsterX(m);
+                    int y = f.getMonsterY(m);
+                    if (x >= cameraX && x < right && y >= cameraY && y < bottom
+                            && (sight == null || sight.isVisible(x, y))) {
+                        int k = (x - cameraX) + (y - cameraY) * w;
+                        nextIds[k] |= MONSTER;
+                        nextBars[k] = f.getMonsterHealth(m) * 2 + (f.getMonsterArmour(m) > 0 ? 1 : 0);
+                    }
+                }
+            }
+        }
+        if (f.hasPlayer()) {
+            int x = f.getPlayerX();
+            int y = f.getPlayerY();
+            if (x >= cameraX && x < right && y >= cameraY && y < bottom) {
+                int k = (x - cameraX) + (y - cameraY) * w;
+                nextIds[k] |= PLAYER;
+                nextBars[k] = f.getPlayerHealth() * 2 + (f.getPlayerArmour() > 0 ? 1 : 0);
+            }
+        }
+        if (!fullRepaint) {
+            for (int k = 0; k < w * h; k++) {
+                if (nextIds[k] != lastIds[k] || nextBars[k] != lastBars[k]) {
+                    repaint(new Rectangle((k % w) * GameGUI.TILE_WIDTH, (k / w) * GameGUI.TILE_HEIGHT,
+                            GameGUI.TILE_WIDTH, GameGUI.TILE_HEIGHT));
+                }
+            }
+        }
+        //keep this frame's cells to compare with the next one
+        int[] ids = lastIds;
+        lastIds = nextIds;
+        nextIds = ids;
+        int[] bars = lastBars;
+        lastBars = nextBars;
+        nextBars = bars;
+        if (fullRepaint) {
+            repaint();
+        }
+    }
+
+    /**
+     * Returns the number of whole or partly visible tiles across the canvas
+     *
+     * @return the width of the screen in tiles
+     */
+    int viewWidth() {
+        return (getWidth() + GameGUI.TILE_WIDTH - 1) / GameGUI.TILE_WIDTH;
+    }
+
+    /**
+     * Returns the number of whole or partly visible tiles down the canvas
+     *
+     * @return the height of the screen in tiles
+     */
+    int viewHeight() {
+        return (getHeight() + GameGUI.TILE_HEIGHT - 1) / GameGUI.TILE_HEIGHT;
+    }
+
+    /**
+     * Moves the camera so that it follows the player. The camera only scrolls
+     * when the player gets within CAMERA_MARGIN tiles of the edge of the
+     * screen, and never shows anything beyond the edge of the level.
+     *
+     * @param centre true to put the player in the middle of the screen rather
+     * than scrolling as little as possible
+     */
+    private void moveCamera(boolean centre) {
+        if (currentFrame == null || !currentFrame.hasPlayer()) {
+            return;
+        }
+        TileMap tiles = currentFrame.getTiles();
+        cameraX = follow(cameraX, currentFrame.getPlayerX(), viewWidth(), tiles.getWidth(), centre);
+        cameraY = follow(cameraY, currentFrame.getPlayerY(), viewHeight(), tiles.getHeight(), centre);
+    }
+
+    /**
+     * Works out the camera position along one axis
+     *
+     * @param camera the current camera position
+     * @param target the position of the player
+     * @param view the size of the screen in tiles
+     * @param size the size of the level in tiles
+     * @param centre whether to centre on the player
+     * @return the new camera position
+     */
+    private static int follow(int camera, int target, int view, int size, boolean centre) {
+        //a whole level fits on screen
+        if (view <= 0 || size <= view) {
+            return 0;
+        }
+        int margin = Math.min(CAMERA_MARGIN, (view - 1) / 2);
+        if (centre) {
+            camera = target - view / 2;
+        } else if (target < camera + margin) {
+            camera = target - margin;
+        } else if (target > camera + view - 1 - margin) {
+            camera = target - view + 1 + margin;
+        }
+        return Math.max(0, Math.min(camera, size - view));
+    }
+
+    /**
+     * Override of method in super class, it draws the custom elements for this
+     * game such as the tiles, player and monsters.
+     *
+     * @param g
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        drawDungeon(g);
+        drawMessages((Graphics2D) g);
+    }
+
+    /**
+     * Adds a message to be drawn on top of the game for a while. If the buffer
+     * is full the oldest message is replaced. Must be called on the Swing
+     * event thread.
+     *
+     * @param s the text of the message
+     * @param millis how long to show it for
+     * @param item true if this is a chest message, which is drawn in a
+     * different colour
+     */
+    void showMessage(String s, int millis, boolean item) {
+        if (messageCount == MAX_MESSAGES) {
+            //drop the oldest message
+            messageHead = (messageHead + 1) % MAX_MESSAGES;
+            messageCount--;
+        }
+        int i = (messageHead + messageCount) % MAX_MESSAGES;
+        messages[i] = s;
+        messageExpiry[i] = System.currentTimeMillis() + millis;
+        messageIsItem[i] = item;
+        messageCount++;
+        repaint(messageBounds());
+        if (!messageTimer.isRunning()) {
+            messageTimer.start();
+        }
+    }
+
+    /**
+     * Called by the message timer to remove messages that have been shown for
+     * long enough. Messages do not all last the same time, so every message is
+     * checked and the ones still showing are kept in order.
+     */
+    private void expireMessages() {
+        long now = System.currentTimeMillis();
+        int kept = 0;
+        for (int n = 0; n < messageCount; n++) {
+            int from = (messageHead + n) % MAX_MESSAGES;
+            if (messageExpiry[from] > now) {
+                int to = (messageHead + kept) % MAX_MESSAGES;
+                messages[to] = messages[from];
+                messageExpiry[to] = messageExpiry[from];
+                messageIsItem[to] = messageIsItem[from];
+                kept++;
+            }
+        }
+        if (kept != messageCount) {
+            for (int n = kept; n < messageCount; n++) {
+                messages[(messageHead + n) % MAX_MESSAGES] = null;
+            }
+            messageCount = kept;
+            repaint(messageBounds());
+        }
+        if (messageCount == 0) {
+            messageTimer.stop();
+        }
+    }
+
+    /**
+     * Returns the area of the canvas that messages can be drawn in
+     *
+     * @return the rectangle covering every message line
+     */
+    private Rectangle messageBounds() {
+        return new Rectangle(MESSAGE_X, MESSAGE_Y, MESSAGE_WIDTH, MESSAGE_HEIGHT * MAX_MESSAGES);
+    }
+
+    /**
+     * Draws the current messages, oldest at the top
+     *
+     * @param g2 The graphics object to use for drawing
+     */
+    private void drawMessages(Graphics2D g2) {
+        for (int n = 0; n < messageCount; n++) {
+            int i = (messageHead + n) % MAX_MESSAGES;
+            int y = MESSAGE_Y + n * MESSAGE_HEIGHT;
+            g2.setColor(MESSAGE_BACKGROUND);
+            g2.fillRect(MESSAGE_X, y, MESSAGE_WIDTH, MESSAGE_HEIGHT - 2);
+            g2.setColor(messageIsItem[i] ? Color.YELLOW : Color.WHITE);
+            g2.drawString(messages[i], MESSAGE_X + 6, y + MESSAGE_HEIGHT - 7);
+        }
+    }
+
+    /**
+     * Draws graphical elements to the screen to display the current dungeon
+     * level tiles, the player and the monsters. Only the tiles and monsters
+     * inside the camera's view are drawn, so the cost depends on the size of
+     * the screen and not the size of the level. Tiles the player has not
+     * explored are left blank, and only the monsters the player can see are
+     * drawn. The tiles come from a cached
+     * image, and monsters are only looked for in the buckets of the frame that
+     * cover the area being repainted. If there is no frame yet nothing is
+     * drawn.
+     *
+     * @param g
+     */
+    void drawDungeon(Graphics g) {
+        FrameSnapshot f = currentFrame;
+        if (f == null) {
+            return;
+        }
+        FieldOfView sight = f.getSight();
+        Graphics2D g2 = (Graphics2D) g;
+        //the range of tiles on screen
+        int left = cameraX;
+        int top = cameraY;
+        int right = Math.min(cameraX + viewWidth(), f.getTiles().getWidth());
+        int bottom = Math.min(cameraY + viewHeight(), f.getTiles().getHeight());
+        drawTileLayer(g2);
+        //only look for monsters in the part of the screen being repainted
+        Rectangle clip = g2.getClipBounds();
+        if (clip != null) {
+            left = Math.max(left, cameraX + clip.x / GameGUI.TILE_WIDTH);
+            top = Math.max(top, cameraY + clip.y / GameGUI.TILE_HEIGHT);
+            right = Math.min(right, cameraX + (clip.x + clip.width + GameGUI.TILE_WIDTH - 1) / GameGUI.TILE_WIDTH);
+            bottom = Math.min(bottom, cameraY + (clip.y + clip.height + GameGUI.TILE_HEIGHT - 1) / GameGUI.TILE_HEIGHT);
+        }
+        //shift everything so the camera's top left tile is drawn at 0, 0
+        g2.translate(-cameraX * GameGUI.TILE_WIDTH, -cameraY * GameGUI.TILE_HEIGHT);
+        if (left < right && top < bottom) {
+            for (int by = top >> FrameSnapshot.BUCKET_SHIFT; by <= (bottom - 1) >> FrameSnapshot.BUCKET_SHIFT; by++) {
+                for (int bx = left >> FrameSnapshot.BUCKET_SHIFT; bx <= (right - 1) >> FrameSnapshot.BUCKET_SHIFT; bx++) {
+                    int b = f.bucket(bx, by);
+                    for (int p = f.getBucketStart(b); p < f.getBucketEnd(b); p++) {
+                        int m = f.getBucketMonster(p);
+                        int x = f.getMonsterX(m);
+                        int y = f.getMonsterY(m);
+                        if (x >= left && x < right && y >= top && y < bottom
+                                && (sight == null || sight.isVisible(x, y))) {
+                            g2.drawImage(monster, x * GameGUI.TILE_WIDTH, y * GameGUI.TILE_HEIGHT, null);
+                            drawHealthBar(g2, x, y, f.getMonsterHealth(m), f.getMonsterMaxHealth(m), f.getMonsterArmour(m));
+                        }
+                    }
+                }
+            }
+        }
+        if (f.hasPlayer()) {
+            g2.drawImage(player, f.getPlayerX() * GameGUI.TILE_WIDTH, f.getPlayerY() * GameGUI.TILE_HEIGHT, null);
+            drawHealthBar(g2, f.getPlayerX(), f.getPlayerY(), f.getPlayerHealth(), f.getPlayerMaxHealth(), f.getPlayerArmour());
+        }
+        g2.translate(cameraX * GameGUI.TILE_WIDTH, cameraY * GameGUI.TILE_HEIGHT);
+    }
+
+    /**
+     * Draws the cached image of the tiles on screen, redrawing the cache first
+     * if the camera has moved, the screen has changed size or a tile has
+     * changed since it was last drawn. If only the explored cells have
+     * changed, just the cells that have been explored since are drawn.
+     *
+     * @param g2 The graphics object to use for drawing
+     */
+    private void drawTileLayer(Graphics2D g2) {
+        int w = viewWidth();
+        int h = viewHeight();
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        if (tileLayer == null || tileLayer.getWidth() != w * GameGUI.TILE_WIDTH
+                || tileLayer.getHeight() != h * GameGUI.TILE_HEIGHT) {
+            //use an image in the screen's own format where there is a screen
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            tileLayer = gc != null
+                    ? gc.createCompatibleImage(w * GameGUI.TILE_WIDTH, h * GameGUI.TILE_HEIGHT)
+                    : new BufferedImage(w * GameGUI.TILE_WIDTH, h * GameGUI.TILE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            layerExplored = new boolean[w * h];
+            layerTiles = null;
+        }
+        TileMap currentTiles = currentFrame.getTiles();
+        FieldOfView sight = currentFrame.getSight();
+        int exploredVersion = sight != null ? sight.getExploredVersion() : 0;
+        boolean full = layerTiles != currentTiles || layerX != cameraX || layerY != cameraY;
+        if (full || exploredVersion != layerExploredVersion) {
+            layerTiles = currentTiles;
+            layerX = cameraX;
+            layerY = cameraY;
+            layerExploredVersion = exploredVersion;
+            Graphics2D lg = tileLayer.createGraphics();
+            if (full) {
+                //clear anything beyond the edge of the level
+                lg.setColor(getBackground());
+                lg.fillRect(0, 0, tileLayer.getWidth(), tileLayer.getHeight());
+                Arrays.fill(layerExplored, false);
+            }
+            int right = Math.min(cameraX + w, currentTiles.getWidth());
+            int bottom = Math.min(cameraY + h, currentTiles.getHeight());
+            for (int i = cameraX; i < right; i++) {
+                for (int j = cameraY; j < bottom; j++) {
+                    int k = (i - cameraX) + (j - cameraY) * w;
+                    //unexplored tiles are left as the background
+                    if (layerExplored[k] || (sight != null && !sight.isExplored(i, j))) {
+                        continue;
+                    }
+                    layerExplored[k] = true;
+                    int px = (i - cameraX) * GameGUI.TILE_WIDTH;
+                    int py = (j - cameraY) * GameGUI.TILE_HEIGHT;
+                    switch (currentTiles.get(i, j)) {
+                        case FLOOR:
+                            lg.drawImage(floor, px, py, null);
+                            break;
+                        case WALL:
+                            lg.drawImage(wall, px, py, null);
+                            break;
+                        case STAIRS:
+                            lg.drawImage(stairs, px, py, null);
+                            break;
+                        case CHEST:
+                            lg.drawImage(chest, px, py, null);
+                    }
+                }
+            }
+            lg.dispose();
+        }
+        g2.drawImage(tileLayer, 0, 0, null);
+    }
+
+    /**
+     * Draws a health bar at the bottom of the tile that an entity is located
+     * in.
+     *
+     * @param g2 The graphics object to use for drawing
+     * @param x The X co-ordinate of the entity
+     * @param y The Y co-ordinate of the entity
+     * @param health The entity's current health
+     * @param maxHealth The entity's maximum health
+     * @param armour The entity's armour, which turns the bar grey
+     */
+    private void drawHealthBar(Graphics2D g2, int x, int y, int health, int maxHealth, int armour) {
+        double remainingHealth = (double) health / (double) maxHealth;
+        g2.setColor(Color.RED);
+        g2.fill(new Rectangle2D.Double(x * GameGUI.TILE_WIDTH, y * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH, GameGUI.HEALTH_BAR_HEIGHT));
+        g2.setColor(Color.GREEN);
+        if (armour > 0) {
+            g2.setColor(Color.GRAY);
+        }
+        g2.fill(new Rectangle2D.Double(x * GameGUI.TILE_WIDTH, y * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH * remainingHealth, GameGUI.HEALTH_BAR_HEIGHT));
+
+    }
+}
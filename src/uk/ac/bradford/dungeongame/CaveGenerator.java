@@ -0,0 +1,87 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The CaveGenerator class lays out caves with a cellular automaton. The level
+ * starts as random noise, then each step makes a cell a wall if at least five
+ * of the nine cells around it (counting itself) are walls, which smooths the
+ * noise into rounded caves. Each step reads one byte array and writes the
+ * other, then the two are swapped, so nothing is created per step. The second
+ * array is kept between levels and only replaced when the level size grows.
+ *
+ * Caves are not always joined up; the engine keeps the largest one.
+ */
+public class CaveGenerator implements LevelGenerator {
+
+    /**
+     * The chance out of 100 of each cell starting as a wall
+     */
+    private static final int FILL_PERCENT = 45;
+
+    /**
+     * The number of smoothing steps. This is even, so the last step writes
+     * back into the array the engine passed in.
+     */
+    private static final int STEPS = 4;
+
+    /**
+     * The second buffer the steps are written into
+     */
+    private byte[] scratch = new byte[0];
+
+    @Override
+    public void carve(byte[] cells, int width, int height, RandomStream rng) {
+        int n = width * height;
+        if (scratch.length < n) {
+            scratch = new byte[n];
+        }
+        //the outer border stays a wall so the caves close up at the edges
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                if (rng.nextInt(100) >= FILL_PERCENT) {
+                    cells[x + y * width] = OPEN;
+                }
+            }
+        }
+        byte[] from = cells;
+        byte[] to = scratch;
+        for (int step = 0; step < STEPS; step++) {
+            smooth(from, to, width, height);
+            byte[] t = from;
+            from = to;
+            to = t;
+        }
+    }
+
+    /**
+     * Runs one step of the automaton
+     *
+     * @param from the cells before the step
+     * @param to the array to write the cells after the step into
+     * @param width the width of the level
+     * @param height the height of the level
+     */
+    private static void smooth(byte[] from, byte[] to, int width, int height) {
+        for (int x = 0; x < width; x++) {
+            to[x] = WALL;
+            to[x + (height - 1) * width] = WALL;
+        }
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            to[row] = WALL;
+            to[row + width - 1] = WALL;
+            for (int x = 1; x < width - 1; x++) {
+                int c = row + x;
+                //OPEN is 1, so the sum counts the open cells
+                int open = from[c - width - 1] + from[c - width] + from[c - width + 1]
+                        + from[c - 1] + from[c] + from[c + 1]
+                        + from[c + width - 1] + from[c + width] + from[c + width + 1];
+                to[c] = 9 - open >= 5 ? WALL : OPEN;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "caves";
+    }
+}
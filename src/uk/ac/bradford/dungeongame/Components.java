@@ -0,0 +1,139 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The Components class groups the open cells of a level into connected
+ * components with a union-find structure stored in a single flat int array.
+ * Cells are added and joined to their open neighbours while the level is
+ * being generated, so the components are known as soon as the last cell has
+ * been made, without a separate flood fill. The largest component is tracked
+ * as cells are joined.
+ *
+ * Each element of the array is either the parent of a cell, or for the root
+ * of a component, minus the number of cells in the component. Only cells that
+ * have been added since the last call to clear() hold meaningful values, so
+ * the array can be reused for every level without being wiped.
+ */
+public class Components {
+
+    /**
+     * The parent of each cell, or minus the size of its component for a root
+     */
+    private final int[] parent;
+
+    /**
+     * The root of the largest component, or -1 if no cells have been added
+     */
+    private int largest = -1;
+
+    /**
+     * Creates a Components structure for levels with the given number of
+     * cells
+     *
+     * @param cells the number of cells in a level (width * height)
+     */
+    public Components(int cells) {
+        parent = new int[cells];
+    }
+
+    /**
+     * Forgets every cell, ready for the next level
+     */
+    public void clear() {
+        largest = -1;
+    }
+
+    /**
+     * Adds an open cell as a component of its own
+     *
+     * @param cell the packed cell (x + y * width)
+     */
+    public void add(int cell) {
+        parent[cell] = -1;
+        if (largest == -1) {
+            largest = cell;
+        }
+    }
+
+    /**
+     * Adds an open cell to an existing component, for a cell joined to a
+     * neighbour whose root is already known
+     *
+     * @param cell the packed cell (x + y * width)
+     * @param root the root of the component to add it to
+     * @return the root of the component, which is unchanged
+     */
+    public int addTo(int cell, int root) {
+        parent[cell] = root;
+        parent[root]--;
+        if (parent[root] < parent[largest]) {
+            largest = root;
+        }
+        return root;
+    }
+
+    /**
+     * Finds the root of the component a cell belongs to, halving the path to
+     * the root as it goes so later finds are quicker
+     *
+     * @param cell a packed cell that has been added
+     * @return the root cell of its component
+     */
+    public int find(int cell) {
+        while (parent[cell] >= 0) {
+            int up = parent[cell];
+            if (parent[up] >= 0) {
+                parent[cell] = parent[up];
+            }
+            cell = up;
+        }
+        return cell;
+    }
+
+    /**
+     * Joins the components of two cells, putting the smaller component under
+     * the larger one
+     *
+     * @param a a packed cell that has been added
+     * @param b another packed cell that has been added
+     * @return the root of the joined component
+     */
+    public int union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return a;
+        }
+        if (parent[a] > parent[b]) {
+            //a is the smaller component (sizes are negative)
+            int t = a;
+            a = b;
+            b = t;
+        }
+        parent[a] += parent[b];
+        parent[b] = a;
+        if (largest == b || parent[a] < parent[largest]) {
+            largest = a;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the root of the largest component. When two components are the
+     * same size the one that reached that size first is returned.
+     *
+     * @return the root cell, or -1 if no cells have been added
+     */
+    public int largest() {
+        return largest;
+    }
+
+    /**
+     * Returns the number of cells in the component a cell belongs to
+     *
+     * @param cell a packed cell that has been added
+     * @return the size of its component
+     */
+    public int size(int cell) {
+        return -parent[find(cell)];
+    }
+}
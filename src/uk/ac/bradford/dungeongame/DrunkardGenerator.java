@@ -0,0 +1,68 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The DrunkardGenerator class lays out winding tunnels with a drunkard's walk.
+ * A single walker starts in the middle of the level and steps in a random
+ * direction each turn, opening every cell it walks through, until a set share
+ * of the level is open. The walk only ever opens cells next to ones it has
+ * already opened, so the tunnels are always joined up. Nothing is created
+ * while walking.
+ */
+public class DrunkardGenerator implements LevelGenerator {
+
+    /**
+     * The share of the inside of the level to open, out of 100
+     */
+    private static final int OPEN_PERCENT = 40;
+
+    /**
+     * The most steps to take for each cell of the level, so a walk that keeps
+     * going over the same ground still finishes
+     */
+    private static final int STEPS_PER_CELL = 20;
+
+    @Override
+    public void carve(byte[] cells, int width, int height, RandomStream rng) {
+        int inside = (width - 2) * (height - 2);
+        int target = Math.max(1, inside * OPEN_PERCENT / 100);
+        long steps = (long) width * height * STEPS_PER_CELL;
+        int x = width / 2;
+        int y = height / 2;
+        int open = 0;
+        while (open < target && steps-- > 0) {
+            int c = x + y * width;
+            if (cells[c] == WALL) {
+                cells[c] = OPEN;
+                open++;
+            }
+            //step in one of the four directions, staying off the border
+            switch (rng.nextInt(4)) {
+                case 0:
+                    if (y > 1) {
+                        y--;
+                    }
+                    break;
+                case 1:
+                    if (x < width - 2) {
+                        x++;
+                    }
+                    break;
+                case 2:
+                    if (y < height - 2) {
+                        y++;
+                    }
+                    break;
+                default:
+                    if (x > 1) {
+                        x--;
+                    }
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "drunkard";
+    }
+}
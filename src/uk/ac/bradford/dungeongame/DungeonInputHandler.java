@@ -2,26 +2,28 @@ package uk.ac.bradford.dungeongame;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import uk.ac.bradford.dungeongame.GameLoop.Command;
 
 /**
  * This class handles keyboard events (key presses) captured by a GameGUI object
  * that are passed to an instance of this class. The class is responsible for
- * calling methods in the GameEngine class that will update tiles, players and
- * monsters for the various key presses that are handled.
+ * turning the various key presses into commands and passing them to the
+ * GameLoop, which calls methods in the GameEngine class that will update tiles,
+ * players and monsters on its own thread.
  * @author prtrundl
  */
 public class DungeonInputHandler implements KeyListener {
 
-    GameEngine engine;      //GameEngine that this class calls methods from
+    GameLoop loop;      //GameLoop that this class sends commands to
     
     /**
      * Constructor that forms a connection between a DungeonInputHandler object and
-     * a GameEngine object. The GameEngine object registered here is the one that will
-     * have methods called to change player and monster positions etc.
-     * @param eng The GameEngine object that this DungeonInputHandler is linked to
+     * a GameLoop object. The GameLoop object registered here is the one that will
+     * be sent commands to change player and monster positions etc.
+     * @param loop The GameLoop object that this DungeonInputHandler is linked to
      */
-    public DungeonInputHandler(GameEngine eng) {
-        engine = eng;
+    public DungeonInputHandler(GameLoop loop) {
+        this.loop = loop;
     }
     
     /**
@@ -32,23 +34,27 @@ public class DungeonInputHandler implements KeyListener {
     public void keyTyped(KeyEvent e) {}
 
     /**
-     * Method to handle key presses captured by the GameGUI. The method currently
-     * calls the game engine to do a game turn for any key press, but if the up,
-     * down, left or right arrow keys are pressed it also calls methods in the
-     * engine to update the game by moving the player (and monsters if implemented)
+     * Method to handle key presses captured by the GameGUI. The method queues a
+     * command for the engine to do a game turn for any key press, and if the up,
+     * down, left or right arrow keys are pressed the command also moves the
+     * player. Page Up climbs back to the level above, F5 saves the game and F9
+     * loads the last save instead of playing a turn. The method returns
+     * straight away without waiting for the turn.
      * @param e A KeyEvent object generated when a keyboard key is pressed
      */
     @Override
     public void keyPressed(KeyEvent e) {
         switch (e.getKeyCode()) {
-            case KeyEvent.VK_LEFT: engine.movePlayerLeft(); break;  //handle left arrow key
-            case KeyEvent.VK_RIGHT: engine.movePlayerRight(); break;//handle right arrow
-            case KeyEvent.VK_UP: engine.movePlayerUp(); break;      //handle up arrow
-            case KeyEvent.VK_DOWN: engine.movePlayerDown(); break;  //handle down arrow
-            default: ;
+            case KeyEvent.VK_LEFT: loop.submit(Command.LEFT); break;   //handle left arrow key
+            case KeyEvent.VK_RIGHT: loop.submit(Command.RIGHT); break; //handle right arrow
+            case KeyEvent.VK_UP: loop.submit(Command.UP); break;       //handle up arrow
+            case KeyEvent.VK_DOWN: loop.submit(Command.DOWN); break;   //handle down arrow
+            case KeyEvent.VK_PAGE_UP: loop.submit(Command.CLIMB); break; //back up the stairs
+            case KeyEvent.VK_F5: loop.submit(Command.SAVE); break;     //quick save
+            case KeyEvent.VK_F9: loop.submit(Command.LOAD); break;     //quick load
+            default: loop.submit(Command.WAIT);    //any other key press just plays a turn
             
         }
-        engine.doTurn();    //any key press will result in this method being called
     }
 
     /**
@@ -5,6 +5,11 @@ package uk.ac.bradford.dungeongame;
  * Monster entity types in the game. The type of entity is stored as an
  * EntityType, an enumeration type local to this class.
  *
+ * The state itself lives in an EntityStore, and an Entity is a view of one
+ * slot in a store. An Entity created with the public constructor has a store
+ * of its own; the monsters on a level share a single store and are only
+ * wrapped in Entity objects when something asks for one.
+ *
  * @author prtrundl
  */
 public class Entity {
@@ -18,39 +23,15 @@ public class Entity {
     }
 
     /**
-     * maxHealth stores the maximum possible health for this entity
-     */
-    private int maxHealth;
-
-    /**
-     * health stores the current health for this entity
+     * The store that holds this entity's health, position, damage, armour and
+     * type
      */
-    private int health;
+    private final EntityStore store;
 
     /**
-     * xPos is the current x position in the game for this entity
+     * The slot of this entity in the store
      */
-    private int xPos;
-
-    /**
-     * yPos is the current y position in the game for this entity
-     */
-    private int yPos;
-    /**
-     * damage is the amount of damage the entity does. The default for this will
-     * be 10.
-     */
-    private int damage;
-    /**
-     * the armour means the player takes less damage if they get armour in a
-     * chest
-     */
-    private int armour;
-    /**
-     * type is used to distinguish between the player and monsters in the game
-     */
-
-    private EntityType type;
+    private final int index;
 
     /**
      * This constructor is used to create an Entity object to use in the game
@@ -65,13 +46,37 @@ public class Entity {
      * default
      */
     public Entity(int maxHealth, int x, int y, EntityType type) {
-        this.maxHealth = maxHealth;
-        this.health = maxHealth;
-        xPos = x;
-        yPos = y;
-        damage = 10;
-        armour = 0;
-        this.type = type;
+        store = new EntityStore(1);
+        index = store.add(maxHealth, x, y, type);
+    }
+
+    /**
+     * Creates an Entity that is a view of a slot in an existing store
+     *
+     * @param store the store holding the entity
+     * @param index the slot of the entity in the store
+     */
+    Entity(EntityStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /**
+     * Returns the store this entity's state is kept in
+     *
+     * @return the EntityStore behind this Entity
+     */
+    EntityStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the slot of this entity in its store
+     *
+     * @return the index to pass to the store's methods
+     */
+    int getIndex() {
+        return index;
     }
 
     /**
@@ -80,7 +85,7 @@ public class Entity {
      * @return The X co-ordinate of this Entity in the game
      */
     public int getX() {
-        return xPos;
+        return store.getX(index);
     }
 
     /**
@@ -89,7 +94,7 @@ public class Entity {
      * @return The Y co-ordinate of this Entity in the game
      */
     public int getY() {
-        return yPos;
+        return store.getY(index);
     }
 
     /**
@@ -99,8 +104,7 @@ public class Entity {
      * @param y The new Y position for this Entity
      */
     public void setPosition(int x, int y) {
-        xPos = x;
-        yPos = y;
+        store.setPosition(index, x, y);
     }
 
     /**
@@ -113,10 +117,7 @@ public class Entity {
      * negative value will decrease the health.
      */
     public void changeHealth(int change) {
-        health += change;
-        if (health > maxHealth) {
-            health = maxHealth;
-        }
+        store.changeHealth(index, change);
     }
 
     /**
@@ -125,7 +126,7 @@ public class Entity {
      * @param d the number the damage will change to
      */
     public void changeDamage(int d) {
-        damage = d;
+        store.setDamage(index, d);
     }
 
     /**
@@ -134,11 +135,7 @@ public class Entity {
      * @param a An integer showing what the armour changes to
      */
     public void changeArmour(int a) {
-         armour += a;
-         if (armour < 0) {
-            armour = 0;
-        } 
-
+        store.changeArmour(index, a);
     }
 
     /**
@@ -147,7 +144,7 @@ public class Entity {
      * @return the value of the damage attribute for this entity
      */
     public int getDamage() {
-        return damage;
+        return store.getDamage(index);
     }
 
     /**
@@ -156,7 +153,7 @@ public class Entity {
      * @return the value of the armour attribute for this entity;
      */
     public int getArmour() {
-        return armour;
+        return store.getArmour(index);
     }
 
     /**
@@ -165,7 +162,7 @@ public class Entity {
      * @return the value of the health attribute for this Entity
      */
     public int getHealth() {
-        return health;
+        return store.getHealth(index);
     }
 
     /**
@@ -174,7 +171,7 @@ public class Entity {
      * @return the value of the maxHealth attribute for this Entity
      */
     public int getMaxHealth() {
-        return maxHealth;
+        return store.getMaxHealth(index);
     }
 
     /**
@@ -184,6 +181,6 @@ public class Entity {
      * @return the EntityType of this entity
      */
     public EntityType getType() {
-        return type;
+        return store.getType(index);
     }
 }
@@ -0,0 +1,275 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+
+/**
+ * The EntityStore class holds a group of entities (such as the monsters on a
+ * level) as parallel arrays of ints, one array per attribute, instead of one
+ * object per entity. Entity i is made up of element i of every array. The
+ * entities are always packed into the first size() slots: removing an entity
+ * moves the last entity into its slot, so loops over the store never have to
+ * skip gaps, and reading an attribute of every entity walks a single array.
+ *
+ * An Entity object can still be used to look at a single slot, see get().
+ */
+public class EntityStore {
+
+    /**
+     * Every EntityType, indexed by ordinal
+     */
+    private static final EntityType[] TYPES = EntityType.values();
+
+    /**
+     * The attributes of each entity, indexed by slot. Only the first size
+     * elements are in use.
+     */
+    private int[] x;
+    private int[] y;
+    private int[] health;
+    private int[] maxHealth;
+    private int[] damage;
+    private int[] armour;
+    private byte[] type;
+
+    /**
+     * The last turn each entity was awake for, used to work out how long a
+     * monster has been asleep. Entities start at turn 0, and it is saved with
+     * them by SaveFile so a loaded monster sleeps for as long as it would
+     * have.
+     */
+    private long[] awakeTurn;
+
+    /**
+     * The number of entities in the store
+     */
+    private int size;
+
+    /**
+     * Creates an empty EntityStore
+     *
+     * @param capacity the number of entities it can hold before it has to grow
+     */
+    public EntityStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = new int[capacity];
+        y = new int[capacity];
+        health = new int[capacity];
+        maxHealth = new int[capacity];
+        damage = new int[capacity];
+        armour = new int[capacity];
+        type = new byte[capacity];
+        awakeTurn = new long[capacity];
+    }
+
+    /**
+     * Adds an entity to the end of the store with full health, damage of 10
+     * and no armour, the same as a new Entity
+     *
+     * @param maxHealth the maximum health of the entity, also used to set its
+     * starting health
+     * @param x the X position of the entity
+     * @param y the Y position of the entity
+     * @param type the EntityType of the entity
+     * @return the slot the entity was added in
+     */
+    public int add(int maxHealth, int x, int y, EntityType type) {
+        if (size == this.x.length) {
+            //full, so double the size of every array
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            health = Arrays.copyOf(health, capacity);
+            this.maxHealth = Arrays.copyOf(this.maxHealth, capacity);
+            damage = Arrays.copyOf(damage, capacity);
+            armour = Arrays.copyOf(armour, capacity);
+            this.type = Arrays.copyOf(this.type, capacity);
+            awakeTurn = Arrays.copyOf(awakeTurn, capacity);
+        }
+        int i = size++;
+        this.x[i] = x;
+        this.y[i] = y;
+        health[i] = maxHealth;
+        this.maxHealth[i] = maxHealth;
+        damage[i] = 10;
+        armour[i] = 0;
+        this.type[i] = (byte) type.ordinal();
+        awakeTurn[i] = 0;
+        return i;
+    }
+
+    /**
+     * Removes the entity in a slot by moving the last entity into it. Anything
+     * that refers to the last entity by its slot (such as an OccupancyGrid id)
+     * must be updated to the removed slot afterwards, unless the removed slot
+     * was the last one.
+     *
+     * @param i the slot to remove
+     */
+    public void remove(int i) {
+        int last = --size;
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            health[i] = health[last];
+            maxHealth[i] = maxHealth[last];
+            damage[i] = damage[last];
+            armour[i] = armour[last];
+            type[i] = type[last];
+            awakeTurn[i] = awakeTurn[last];
+        }
+    }
+
+    /**
+     * Returns the number of entities in the store
+     *
+     * @return the number of slots in use
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an Entity that reads and changes a slot of this store. The
+     * Entity refers to the slot and not to the entity in it, so after a
+     * remove() it may refer to a different entity.
+     *
+     * @param i the slot
+     * @return an Entity view of the slot
+     */
+    public Entity get(int i) {
+        return new Entity(this, i);
+    }
+
+    /**
+     * Returns the X position of an entity
+     *
+     * @param i the slot of the entity
+     * @return the X co-ordinate of the entity
+     */
+    public int getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Returns the Y position of an entity
+     *
+     * @param i the slot of the entity
+     * @return the Y co-ordinate of the entity
+     */
+    public int getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Sets the position of an entity
+     *
+     * @param i the slot of the entity
+     * @param x the new X position
+     * @param y the new Y position
+     */
+    public void setPosition(int i, int x, int y) {
+        this.x[i] = x;
+        this.y[i] = y;
+    }
+
+    /**
+     * Returns the current health of an entity
+     *
+     * @param i the slot of the entity
+     * @return the health of the entity
+     */
+    public int getHealth(int i) {
+        return health[i];
+    }
+
+    /**
+     * Returns the maximum health of an entity
+     *
+     * @param i the slot of the entity
+     * @return the maximum health of the entity
+     */
+    public int getMaxHealth(int i) {
+        return maxHealth[i];
+    }
+
+    /**
+     * Changes the health of an entity, stopping at its maximum health
+     *
+     * @param i the slot of the entity
+     * @param change the change in health, negative for damage
+     */
+    public void changeHealth(int i, int change) {
+        health[i] = Math.min(health[i] + change, maxHealth[i]);
+    }
+
+    /**
+     * Returns the damage an entity does
+     *
+     * @param i the slot of the entity
+     * @return the damage of the entity
+     */
+    public int getDamage(int i) {
+        return damage[i];
+    }
+
+    /**
+     * Sets the damage an entity does
+     *
+     * @param i the slot of the entity
+     * @param d the new damage
+     */
+    public void setDamage(int i, int d) {
+        damage[i] = d;
+    }
+
+    /**
+     * Returns the armour of an entity
+     *
+     * @param i the slot of the entity
+     * @return the armour of the entity
+     */
+    public int getArmour(int i) {
+        return armour[i];
+    }
+
+    /**
+     * Changes the armour of an entity, stopping at 0
+     *
+     * @param i the slot of the entity
+     * @param a the change in armour
+     */
+    public void changeArmour(int i, int a) {
+        armour[i] = Math.max(armour[i] + a, 0);
+    }
+
+    /**
+     * Returns the last turn an entity was awake for
+     *
+     * @param i the slot of the entity
+     * @return the turn, or 0 if it has not been set
+     */
+    public long getAwakeTurn(int i) {
+        return awakeTurn[i];
+    }
+
+    /**
+     * Sets the last turn an entity was awake for
+     *
+     * @param i the slot of the entity
+     * @param turn the turn
+     */
+    public void setAwakeTurn(int i, long turn) {
+        awakeTurn[i] = turn;
+    }
+
+    /**
+     * Returns the type of an entity
+     *
+     * @param i the slot of the entity
+     * @return EntityType.PLAYER or EntityType.MONSTER
+     */
+    public EntityType getType(int i) {
+        return TYPES[type[i]];
+    }
+}
@@ -0,0 +1,341 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The FieldOfView class works out which cells of a level can be seen from the
+ * player, using symmetric shadowcasting: each of the four quadrants around
+ * the player is scanned row by row outwards, and a wall narrows the range of
+ * slopes the rows beyond it can see through. Walls block sight and every
+ * other tile is see-through. A wall is seen if any part of it is in range,
+ * but any other cell is only seen if its middle is, which makes sight
+ * symmetric: the player can see an open cell exactly when that cell can see
+ * the player, so a monster can chase the player as soon as it is seen.
+ * Slopes are kept as fractions of ints, so no cell is lost to rounding. Only
+ * cells within the radius are looked at, so the cost depends on the radius
+ * and not on the size of the level.
+ *
+ * Cells are kept in two bitsets. The visible cells are a long[] covering the
+ * square of cells within the radius of the player, so clearing it each turn
+ * only touches a few words. The explored cells (every cell that has ever been
+ * visible on this level) are kept in one long[] per TileMap chunk, created
+ * the first time a cell in the chunk is seen. Like TileMap, snapshot() takes
+ * a read-only copy that shares the explored chunks, and the live field copies
+ * a shared chunk before changing it.
+ */
+public class FieldOfView {
+
+    /**
+     * The number of longs holding the explored bits of one chunk
+     */
+    private static final int CHUNK_WORDS = (TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE) >> 6;
+
+    /**
+     * How a quadrant's row and column are turned into X and Y steps, one
+     * column per quadrant (up, right, down and left): x = col * XX + row * XY
+     * and y = col * YX + row * YY
+     */
+    private static final int[] XX = {1, 0, 1, 0};
+    private static final int[] XY = {0, 1, 0, -1};
+    private static final int[] YX = {0, 1, 0, 1};
+    private static final int[] YY = {-1, 0, 1, 0};
+
+    /**
+     * The size of the level
+     */
+    private final int width;
+    private final int height;
+
+    /**
+     * How far can be seen, in tiles
+     */
+    private final int radius;
+
+    /**
+     * The width of the square of cells the visible bits cover, 2 * radius + 1
+     */
+    private final int side;
+
+    /**
+     * The visible cells, one bit per cell of the square centred on the
+     * origin, indexed by (x - originX + radius) + (y - originY + radius) * side
+     */
+    private final long[] visible;
+
+    /**
+     * The cell the visible cells were worked out from, normally the player
+     */
+    private int originX;
+    private int originY;
+
+    /**
+     * The number of chunks across the level
+     */
+    private final int chunksX;
+
+    /**
+     * The explored bits of each chunk, indexed by chunkX + chunkY * chunksX.
+     * A null chunk has not had any cell explored.
+     */
+    private final long[][] explored;
+
+    /**
+     * For each chunk, whether it is shared with a snapshot and must be copied
+     * before it is changed. null for a snapshot, which can not be changed.
+     */
+    private final boolean[] shared;
+
+    /**
+     * Counts the times a cell has been explored for the first time, so a view
+     * can tell when its picture of the explored cells is out of date
+     */
+    private int exploredVersion;
+
+    /**
+     * The level the explored cells belong to. When the field is worked out
+     * for a different level the explored cells are forgotten.
+     */
+    private TileMap level;
+
+    /**
+     * The level the current compute() call is looking at
+     */
+    private TileMap tiles;
+
+    /**
+     * Creates a FieldOfView for levels of the given size, with nothing
+     * visible or explored
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     * @param radius how far can be seen, in tiles
+     */
+    public FieldOfView(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        side = 2 * radius + 1;
+        visible = new long[(side * side + 63) >> 6];
+        chunksX = (width + TileMap.CHUNK_MASK) >> TileMap.CHUNK_SHIFT;
+        int chunksY = (height + TileMap.CHUNK_MASK) >> TileMap.CHUNK_SHIFT;
+        explored = new long[chunksX * chunksY][];
+        shared = new boolean[explored.length];
+    }
+
+    /**
+     * Creates a read-only snapshot of another field, sharing its explored
+     * chunks
+     *
+     * @param source the field to take a snapshot of
+     */
+    private FieldOfView(FieldOfView source) {
+        width = source.width;
+        height = source.height;
+        radius = source.radius;
+        side = source.side;
+        visible = source.visible.clone();
+        originX = source.originX;
+        originY = source.originY;
+        chunksX = source.chunksX;
+        explored = source.explored.clone();
+        shared = null;
+        exploredVersion = source.exploredVersion;
+        level = source.level;
+    }
+
+    /**
+     * Takes a read-only snapshot of this field. The snapshot will not change
+     * when this field does, so it can safely be read by another thread.
+     *
+     * @return a FieldOfView holding the current cells that can not be changed
+     */
+    public FieldOfView snapshot() {
+        if (shared == null) {
+            return this;
+        }
+        Arrays.fill(shared, true);
+        return new FieldOfView(this);
+    }
+
+    /**
+     * Works out the cells that can be seen from a cell, and adds them to the
+     * explored cells. If the level is not the one the field was last worked
+     * out for, the explored cells are forgotten first.
+     *
+     * @param tiles the level, whose walls block sight
+     * @param x the X co-ordinate to look from
+     * @param y the Y co-ordinate to look from
+     * @throws UnsupportedOperationException if this field is a snapshot
+     */
+    public void compute(TileMap tiles, int x, int y) {
+        if (shared == null) {
+            throw new UnsupportedOperationException("Snapshots can not be changed");
+        }
+        if (level == null || !level.isSameLevel(tiles)) {
+            level = tiles;
+            Arrays.fill(explored, null);
+            Arrays.fill(shared, false);
+            exploredVersion++;
+        }
+        this.tiles = tiles;
+        Arrays.fill(visible, 0);
+        originX = x;
+        originY = y;
+        see(x, y);
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            //from the diagonal on one side to the diagonal on the other
+            scan(1, -1, 1, 1, 1, quadrant);
+        }
+        this.tiles = null;
+    }
+
+    /**
+     * Scans one quadrant from a row outwards, between two slopes. A slope is
+     * the column divided by the row, so -1 and 1 are the two diagonals. A run
+     * of open cells followed by a wall starts a scan of the rows beyond them,
+     * ending at the wall, and a wall followed by an open cell moves the start
+     * of this range past the wall.
+     *
+     * @param row the first row to scan, counted out from the origin
+     * @param startNum the numerator of the slope the range starts at
+     * @param startDen the denominator of the start slope, above 0
+     * @param endNum the numerator of the slope the range ends at
+     * @param endDen the denominator of the end slope, above 0
+     * @param quadrant the index of the quadrant in XX, XY, YX and YY
+     */
+    private void scan(int row, int startNum, int startDen, int endNum, int endDen, int quadrant) {
+        //the square of the radius, rounded out a little so the edge is round
+        int limit = radius * radius + radius;
+        for (; row <= radius; row++) {
+            //the columns the range touches, rounding halves towards the middle
+            int minCol = Math.floorDiv(2 * row * startNum + startDen, 2 * startDen);
+            int maxCol = -Math.floorDiv(endDen - 2 * row * endNum, 2 * endDen);
+            //what the last cell in the row was: 0 none, 1 open, 2 wall
+            int last = 0;
+            for (int col = minCol; col <= maxCol; col++) {
+                int x = originX + col * XX[quadrant] + row * XY[quadrant];
+                int y = originY + col * YX[quadrant] + row * YY[quadrant];
+                //outside the level counts as a wall
+                boolean wall = tiles.getOrdinal(x, y) == TileType.WALL.ordinal();
+                boolean middleInRange = col * startDen >= row * startNum && col * endDen <= row * endNum;
+                if ((wall || middleInRange) && col * col + row * row <= limit) {
+                    see(x, y);
+                }
+                if (last == 2 && !wall) {
+                    //the range now starts at the left edge of this cell
+                    startNum = 2 * col - 1;
+                    startDen = 2 * row;
+                } else if (last == 1 && wall) {
+                    scan(row + 1, startNum, startDen, 2 * col - 1, 2 * row, quadrant);
+                }
+                last = wall ? 2 : 1;
+            }
+            if (last != 1) {
+                //the row was empty or ended in a wall, so nothing is beyond it
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks a cell as visible and explored
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     */
+    private void see(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        int v = (x - originX + radius) + (y - originY + radius) * side;
+        visible[v >> 6] |= 1L << v;
+        int c = (x >> TileMap.CHUNK_SHIFT) + (y >> TileMap.CHUNK_SHIFT) * chunksX;
+        int b = (x & TileMap.CHUNK_MASK) + ((y & TileMap.CHUNK_MASK) << TileMap.CHUNK_SHIFT);
+        long[] chunk = explored[c];
+        if (chunk != null && (chunk[b >> 6] & (1L << b)) != 0) {
+            return;
+        }
+        if (chunk == null) {
+            chunk = explored[c] = new long[CHUNK_WORDS];
+        } else if (shared[c]) {
+            chunk = explored[c] = chunk.clone();
+        }
+        shared[c] = false;
+        chunk[b >> 6] |= 1L << b;
+        exploredVersion++;
+    }
+
+    /**
+     * Returns whether a cell can be seen
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     * @return true if the cell was visible when the field was last worked out
+     */
+    public boolean isVisible(int x, int y) {
+        int dx = x - originX + radius;
+        int dy = y - originY + radius;
+        if (dx < 0 || dy < 0 || dx >= side || dy >= side) {
+            return false;
+        }
+        int v = dx + dy * side;
+        return (visible[v >> 6] & (1L << v)) != 0;
+    }
+
+    /**
+     * Returns whether a cell has ever been seen on this level
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     * @return true if the cell has been explored
+     */
+    public boolean isExplored(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return false;
+        }
+        long[] chunk = explored[(x >> TileMap.CHUNK_SHIFT) + (y >> TileMap.CHUNK_SHIFT) * chunksX];
+        if (chunk == null) {
+            return false;
+        }
+        int b = (x & TileMap.CHUNK_MASK) + ((y & TileMap.CHUNK_MASK) << TileMap.CHUNK_SHIFT);
+        return (chunk[b >> 6] & (1L << b)) != 0;
+    }
+
+    /**
+     * Returns the X co-ordinate the field was last worked out from
+     *
+     * @return the X co-ordinate of the origin
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * Returns the Y co-ordinate the field was last worked out from
+     *
+     * @return the Y co-ordinate of the origin
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Returns how far can be seen
+     *
+     * @return the radius in tiles
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Returns a number that changes whenever a cell is explored for the first
+     * time or the explored cells are forgotten
+     *
+     * @return the explored version
+     */
+    public int getExploredVersion() {
+        return exploredVersion;
+    }
+}
@@ -0,0 +1,342 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The FlowField class holds the walking distance from every cell of a level to
+ * a single source cell (the player), found with a breadth first search over
+ * the cells that are not walls. Any number of monsters can then chase the
+ * source by stepping to whichever neighbouring cell is closest to it, so the
+ * cost of pathfinding is one pass over the level per turn no matter how many
+ * monsters there are.
+ *
+ * The field is stored with a border one cell wide around the level that is
+ * always closed, so the search can find the neighbours of a cell by adding a
+ * fixed offset without checking for the edge of the level. Which cells are
+ * open is copied out of the TileMap only when the level changes, and single
+ * tiles that change (such as a chest being opened) are patched in with
+ * tileChanged(). All the arrays are created once and reused every time the
+ * field is computed.
+ *
+ * Monsters only need the distances around themselves, so the search stops as
+ * soon as every monster's cell has been reached and is paused rather than
+ * thrown away. The next turn carries on from where it stopped if the player
+ * has not moved and no cell has opened or closed, which covers monsters that
+ * wander further out. Moving the player by one tile changes the distance of
+ * nearly every cell by one, so in that case the search starts again, but it
+ * still only covers the area out to the furthest monster. Distances are
+ * stamped with the search they came from, so starting again does not have to
+ * clear the whole field.
+ */
+public class FlowField {
+
+    /**
+     * The distance stored for cells that can not reach the source
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The size of the level the field covers
+     */
+    private final int width;
+    private final int height;
+
+    /**
+     * The width of the stored field, including the border
+     */
+    private final int stride;
+
+    /**
+     * The offset to add to a stored cell to reach its neighbour in each
+     * direction, indexed the same way as in GameEngine: 0 (up), 1 (right),
+     * 2 (down) and 3 (left)
+     */
+    private final int[] offsets;
+
+    /**
+     * The distance from each stored cell to the source. Cells are stored at
+     * (x + 1) + (y + 1) * stride. A distance is only valid if the cell's
+     * stamp matches the current search.
+     */
+    private final int[] distance;
+
+    /**
+     * The search each stored cell's distance was found by
+     */
+    private final int[] stamp;
+
+    /**
+     * Marks the cells the current call to compute() has to reach. A cell is
+     * wanted if its mark matches wantedMark.
+     */
+    private final int[] wanted;
+
+    /**
+     * Whether each stored cell can be walked through. The border is always
+     * false.
+     */
+    private final boolean[] open;
+
+    /**
+     * The stored cells waiting to be visited by the search
+     */
+    private final int[] queue;
+
+    /**
+     * The map and version the open array was copied from
+     */
+    private TileMap openTiles;
+    private int openVersion;
+
+    /**
+     * The current search, the stored cell it started from and whether it can
+     * still be carried on. It can not once any cell opens or closes.
+     */
+    private int search;
+    private int source = -1;
+    private boolean resumable;
+
+    /**
+     * The current mark for wanted cells
+     */
+    private int wantedMark;
+
+    /**
+     * The part of the queue the paused search has still to visit
+     */
+    private int head;
+    private int tail;
+
+    /**
+     * Creates a FlowField for levels of the given size. Every cell starts
+     * unreachable.
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    public FlowField(int width, int height) {
+        this.width = width;
+        this.height = height;
+        stride = width + 2;
+        offsets = new int[]{-stride, 1, stride, -1};
+        distance = new int[stride * (height + 2)];
+        stamp = new int[distance.length];
+        wanted = new int[distance.length];
+        open = new boolean[distance.length];
+        queue = new int[width * height];
+    }
+
+    /**
+     * Converts a level co-ordinate into a stored cell
+     *
+     * @param x the X co-ordinate in the level
+     * @param y the Y co-ordinate in the level
+     * @return the index of the cell in the stored arrays
+     */
+    private int cell(int x, int y) {
+        return (x + 1) + (y + 1) * stride;
+    }
+
+    /**
+     * Copies which cells are open out of a level, unless they were already
+     * copied from the same map at the same version
+     *
+     * @param tiles the level
+     */
+    private void copyOpenCells(TileMap tiles) {
+        if (tiles == openTiles && tiles.getVersion() == openVersion) {
+            return;
+        }
+        openTiles = tiles;
+        openVersion = tiles.getVersion();
+        for (int y = 0; y < height; y++) {
+            int c = cell(0, y);
+            for (int x = 0; x < width; x++) {
+                open[c++] = tiles.getOrdinal(x, y) != TileType.WALL.ordinal();
+            }
+        }
+        resumable = false;
+    }
+
+    /**
+     * Tells the field that a single tile of the level has just been changed,
+     * so it can be patched in without copying the whole level again. If the
+     * tile is as open as it was before (a chest becoming a floor) the current
+     * distances are all still right and nothing else needs doing.
+     *
+     * @param tiles the level the tile was changed in
+     * @param x the X co-ordinate of the tile
+     * @param y the Y co-ordinate of the tile
+     */
+    public void tileChanged(TileMap tiles, int x, int y) {
+        if (tiles != openTiles) {
+            //a different level, which will be copied when it is next used
+            return;
+        }
+        int c = cell(x, y);
+        boolean isOpen = tiles.getOrdinal(x, y) != TileType.WALL.ordinal();
+        if (open[c] != isOpen) {
+            open[c] = isOpen;
+            resumable = false;
+        }
+        //if this was the only change the copy is up to date again
+        if (openVersion + 1 == tiles.getVersion()) {
+            openVersion = tiles.getVersion();
+        }
+    }
+
+    /**
+     * Moves a stamp counter on by one, clearing the array it is used with
+     * when the counter runs out of values
+     *
+     * @param counter the current value of the counter
+     * @param stamps the array the counter's values are stored in
+     * @return the next value of the counter
+     */
+    private static int nextStamp(int counter, int[] stamps) {
+        if (counter == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            return 1;
+        }
+        return counter + 1;
+    }
+
+    /**
+     * Works out the distance to a source cell from every cell that is needed.
+     * The search from the source runs until the cell of every target has been
+     * reached, carrying on from the last call if the source and the open
+     * cells are the same as they were then.
+     *
+     * @param tiles the level, whose walls can not be walked through
+     * @param sourceX the X co-ordinate of the source
+     * @param sourceY the Y co-ordinate of the source
+     * @param targets the entities that need distances, or null to search the
+     * whole level
+     */
+    public void compute(TileMap tiles, int sourceX, int sourceY, EntityStore targets) {
+        compute(tiles, sourceX, sourceY, targets, null, null);
+    }
+
+    /**
+     * Works out the distance to a source cell from every cell that is needed,
+     * only counting the awake targets that can be seen from the source.
+     * Targets that are asleep or can not see the source do not chase it, so
+     * the search can stop as soon as the ones that can have been reached, and
+     * the sleeping targets are not even looked at.
+     *
+     * @param tiles the level, whose walls can not be walked through
+     * @param sourceX the X co-ordinate of the source
+     * @param sourceY the Y co-ordinate of the source
+     * @param targets the entities that need distances, or null to search the
+     * whole level
+     * @param awake the slots of the targets that are awake, or null to count
+     * every target
+     * @param sight the cells that can be seen from the source, or null to
+     * count every target
+     */
+    public void compute(TileMap tiles, int sourceX, int sourceY, EntityStore targets, ActiveSet awake,
+            FieldOfView sight) {
+        copyOpenCells(tiles);
+        int start = cell(sourceX, sourceY);
+        if (start != source || !resumable) {
+            //start a new search
+            search = nextStamp(search, stamp);
+            source = start;
+            resumable = true;
+            stamp[start] = search;
+            distance[start] = 0;
+            head = 0;
+            tail = 0;
+            queue[tail++] = start;
+        }
+        //mark the targets the search has not reached yet
+        int remaining;
+        if (targets == null) {
+            remaining = Integer.MAX_VALUE;
+        } else {
+            wantedMark = nextStamp(wantedMark, wanted);
+            remaining = 0;
+            int count = awake != null ? awake.size() : targets.size();
+            for (int k = 0; k < count; k++) {
+                int i = awake != null ? awake.get(k) : k;
+                if (sight != null && !sight.isVisible(targets.getX(i), targets.getY(i))) {
+                    continue;
+                }
+                int c = cell(targets.getX(i), targets.getY(i));
+                if (stamp[c] != search && wanted[c] != wantedMark) {
+                    wanted[c] = wantedMark;
+                    remaining++;
+                }
+            }
+        }
+        while (remaining > 0 && head < tail) {
+            int c = queue[head++];
+            int next = distance[c] + 1;
+            for (int d = 0; d < 4; d++) {
+                int n = c + offsets[d];
+                if (open[n] && stamp[n] != search) {
+                    stamp[n] = search;
+                    distance[n] = next;
+                    queue[tail++] = n;
+                    if (wanted[n] == wantedMark) {
+                        remaining--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the walking distance from a cell to the source
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     * @return the number of steps to the source, or UNREACHABLE if the cell is
+     * a wall, is outside the level, can not reach the source or was not
+     * reached by the search
+     */
+    public int getDistance(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return UNREACHABLE;
+        }
+        return distance(cell(x, y));
+    }
+
+    /**
+     * Returns the distance of a stored cell found by the current search
+     *
+     * @param c the stored cell
+     * @return the distance, or UNREACHABLE if the search has not reached it
+     */
+    private int distance(int c) {
+        return stamp[c] == search ? distance[c] : UNREACHABLE;
+    }
+
+    /**
+     * Finds the direction to step in from a cell to get closer to the source.
+     * When more than one neighbour is equally close the first in direction
+     * order is chosen. The cell should be one of the targets passed to the
+     * last call to compute(), so that its closer neighbours have all been
+     * reached.
+     *
+     * @param x the X co-ordinate of the cell, which must be inside the level
+     * @param y the Y co-ordinate of the cell, which must be inside the level
+     * @return the index of the direction, 0 (up), 1 (right), 2 (down) or 3
+     * (left), or -1 if the cell can not reach the source or is the source
+     */
+    public int downhill(int x, int y) {
+        int c = cell(x, y);
+        int best = distance(c);
+        int bestDirection = -1;
+        for (int d = 0; d < 4; d++) {
+            //the border keeps every neighbour inside the stored arrays
+            int n = distance(c + offsets[d]);
+            if (n < best) {
+                best = n;
+                bestDirection = d;
+            }
+        }
+        return bestDirection;
+    }
+}
@@ -0,0 +1,321 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The FrameSnapshot class is an immutable copy of everything needed to draw
+ * one frame of the game. The GameEngine builds one at the end of each turn and
+ * hands it to the GameView, so the view can draw it on another thread while
+ * the engine carries on changing the live level. Nothing in a snapshot changes
+ * after it is built, so no locking is needed to read it.
+ *
+ * The tiles are a TileMap snapshot, which shares unchanged chunks with the
+ * live level, so copying them costs almost nothing. The player and monsters
+ * are copied into primitive arrays. The monsters are also sorted into buckets
+ * of TileMap.CHUNK_SIZE x TileMap.CHUNK_SIZE cells, so the monsters near the
+ * camera can be found without looking at every monster in the level.
+ *
+ * The cells the player can see and has explored are a FieldOfView snapshot,
+ * which like the tiles shares its unchanged parts with the live field. Every
+ * monster is copied, whether or not it can be seen, and it is up to the view
+ * to hide the ones that can not.
+ */
+public final class FrameSnapshot {
+
+    /**
+     * Buckets of monsters are the same size as the chunks of a TileMap
+     */
+    public static final int BUCKET_SHIFT = TileMap.CHUNK_SHIFT;
+
+    /**
+     * A read-only snapshot of the tiles of the level
+     */
+    private final TileMap tiles;
+
+    /**
+     * A read-only snapshot of the cells the player can see and has explored,
+     * or null if everything can be seen
+     */
+    private final FieldOfView sight;
+
+    /**
+     * Whether there is a player, and the player's position and health
+     */
+    private final boolean hasPlayer;
+    private final int playerX;
+    private final int playerY;
+    private final int playerHealth;
+    private final int playerMaxHealth;
+    private final int playerArmour;
+
+    /**
+     * The number of living monsters, and the position and health of each one.
+     * Monsters are stored in the same order as the engine's monsters store.
+     */
+    private final int monsterCount;
+    private final int[] monsterX;
+    private final int[] monsterY;
+    private final int[] monsterHealth;
+    private final int[] monsterMaxHealth;
+    private final int[] monsterArmour;
+
+    /**
+     * The number of buckets across the level
+     */
+    private final int bucketsX;
+
+    /**
+     * The monsters in each bucket, indexed by bucketX + bucketY * bucketsX. The
+     * monsters in bucket b are bucketMonsters[bucketStart[b]] up to (but not
+     * including) bucketMonsters[bucketStart[b + 1]].
+     */
+    private final int[] bucketStart;
+    private final int[] bucketMonsters;
+
+    /**
+     * Builds a snapshot of a frame
+     *
+     * @param tiles a read-only snapshot of the level, from TileMap.snapshot()
+     * @param sight a read-only snapshot of what the player can see, from
+     * FieldOfView.snapshot(), or null if everything can be seen
+     * @param player the player Entity, or null if there is no player
+     * @param monsters the monsters for the level, or null if there are none
+     */
+    public FrameSnapshot(TileMap tiles, FieldOfView sight, Entity player, EntityStore monsters) {
+        this.tiles = tiles;
+        this.sight = sight;
+        hasPlayer = player != null;
+        if (hasPlayer) {
+            playerX = player.getX();
+            playerY = player.getY();
+            playerHealth = player.getHealth();
+            playerMaxHealth = player.getMaxHealth();
+            playerArmour = player.getArmour();
+        } else {
+            playerX = playerY = playerHealth = playerMaxHealth = playerArmour = 0;
+        }
+        int count = monsters != null ? monsters.size() : 0;
+        monsterCount = count;
+        monsterX = new int[count];
+        monsterY = new int[count];
+        monsterHealth = new int[count];
+        monsterMaxHealth = new int[count];
+        monsterArmour = new int[count];
+        bucketsX = (tiles.getWidth() + TileMap.CHUNK_MASK) >> BUCKET_SHIFT;
+        int bucketsY = (tiles.getHeight() + TileMap.CHUNK_MASK) >> BUCKET_SHIFT;
+        bucketStart = new int[bucketsX * bucketsY + 1];
+        bucketMonsters = new int[count];
+        int[] bucketOf = new int[count];
+        for (int n = 0; n < count; n++) {
+            monsterX[n] = monsters.getX(n);
+            monsterY[n] = monsters.getY(n);
+            monsterHealth[n] = monsters.getHealth(n);
+            monsterMaxHealth[n] = monsters.getMaxHealth(n);
+            monsterArmour[n] = monsters.getArmour(n);
+            bucketOf[n] = bucket(monsterX[n] >> BUCKET_SHIFT, monsterY[n] >> BUCKET_SHIFT);
+            //count the monsters in each bucket, shifted up one place
+            bucketStart[bucketOf[n] + 1]++;
+        }
+        //turn the counts into start positions, then fill each bucket in order
+        for (int b = 1; b < bucketStart.length; b++) {
+            bucketStart[b] += bucketStart[b - 1];
+        }
+        int[] next = new int[bucketStart.length - 1];
+        for (int i = 0; i < count; i++) {
+            int b = bucketOf[i];
+            bucketMonsters[bucketStart[b] + next[b]++] = i;
+        }
+    }
+
+    /**
+     * Returns the tiles of the level in this frame
+     *
+     * @return a read-only TileMap
+     */
+    public TileMap getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Returns the cells the player can see and has explored in this frame
+     *
+     * @return a read-only FieldOfView, or null if everything can be seen
+     */
+    public FieldOfView getSight() {
+        return sight;
+    }
+
+    /**
+     * Returns whether there is a player in this frame
+     *
+     * @return true if the player's details can be read
+     */
+    public boolean hasPlayer() {
+        return hasPlayer;
+    }
+
+    /**
+     * Returns the X co-ordinate of the player
+     *
+     * @return the player's X co-ordinate
+     */
+    public int getPlayerX() {
+        return playerX;
+    }
+
+    /**
+     * Returns the Y co-ordinate of the player
+     *
+     * @return the player's Y co-ordinate
+     */
+    public int getPlayerY() {
+        return playerY;
+    }
+
+    /**
+     * Returns the player's current health
+     *
+     * @return the player's health
+     */
+    public int getPlayerHealth() {
+        return playerHealth;
+    }
+
+    /**
+     * Returns the player's maximum health
+     *
+     * @return the player's maximum health
+     */
+    public int getPlayerMaxHealth() {
+        return playerMaxHealth;
+    }
+
+    /**
+     * Returns the player's armour
+     *
+     * @return the player's armour
+     */
+    public int getPlayerArmour() {
+        return playerArmour;
+    }
+
+    /**
+     * Returns the number of living monsters in this frame
+     *
+     * @return the number of monsters
+     */
+    public int getMonsterCount() {
+        return monsterCount;
+    }
+
+    /**
+     * Returns the X co-ordinate of a monster
+     *
+     * @param i the index of the monster, from 0 to getMonsterCount() - 1
+     * @return the monster's X co-ordinate
+     */
+    public int getMonsterX(int i) {
+        return monsterX[i];
+    }
+
+    /**
+     * Returns the Y co-ordinate of a monster
+     *
+     * @param i the index of the monster, from 0 to getMonsterCount() - 1
+     * @return the monster's Y co-ordinate
+     */
+    public int getMonsterY(int i) {
+        return monsterY[i];
+    }
+
+    /**
+     * Returns the current health of a monster
+     *
+     * @param i the index of the monster, from 0 to getMonsterCount() - 1
+     * @return the monster's health
+     */
+    public int getMonsterHealth(int i) {
+        return monsterHealth[i];
+    }
+
+    /**
+     * Returns the maximum health of a monster
+     *
+     * @param i the index of the monster, from 0 to getMonsterCount() - 1
+     * @return the monster's maximum health
+     */
+    public int getMonsterMaxHealth(int i) {
+        return monsterMaxHealth[i];
+    }
+
+    /**
+     * Returns the armour of a monster
+     *
+     * @param i the index of the monster, from 0 to getMonsterCount() - 1
+     * @return the monster's armour
+     */
+    public int getMonsterArmour(int i) {
+        return monsterArmour[i];
+    }
+
+    /**
+     * Returns the number of buckets across the level
+     *
+     * @return the number of buckets in each row
+     */
+    public int getBucketsX() {
+        return bucketsX;
+    }
+
+    /**
+     * Returns the number of buckets down the level
+     *
+     * @return the number of buckets in each column
+     */
+    public int getBucketsY() {
+        return (bucketStart.length - 1) / bucketsX;
+    }
+
+    /**
+     * Converts the position of a bucket into its index
+     *
+     * @param bucketX the bucket's X position, a cell X co-ordinate shifted
+     * right by BUCKET_SHIFT
+     * @param bucketY the bucket's Y position, a cell Y co-ordinate shifted
+     * right by BUCKET_SHIFT
+     * @return the index of the bucket
+     */
+    public int bucket(int bucketX, int bucketY) {
+        return bucketX + bucketY * bucketsX;
+    }
+
+    /**
+     * Returns the position in the bucket list of the first monster in a bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the first position to pass to getBucketMonster()
+     */
+    public int getBucketStart(int bucket) {
+        return bucketStart[bucket];
+    }
+
+    /**
+     * Returns the position in the bucket list just after the last monster in a
+     * bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the position to stop at when calling getBucketMonster()
+     */
+    public int getBucketEnd(int bucket) {
+        return bucketStart[bucket + 1];
+    }
+
+    /**
+     * Returns a monster from the bucket list
+     *
+     * @param position a position between getBucketStart() and getBucketEnd()
+     * of a bucket
+     * @return the index of the monster at that position
+     */
+    public int getBucketMonster(int position) {
+        return bucketMonsters[position];
+    }
+}
@@ -5,9 +5,17 @@
  */
 package uk.ac.bradford.dungeongame;
 
-import java.awt.Point;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import uk.ac.bradford.dungeongame.Entity.EntityType;
 
 /**
@@ -32,16 +40,23 @@ public class GameEngine {
     }
 
     /**
-     * The width of the dungeon level, measured in tiles. Changing this may
-     * cause the display to draw incorrectly, and as a minimum the size of the
-     * GUI would need to be adjusted.
+     * An enumeration type for the state of a game. A game is PLAYING until
+     * either the boss is killed (WON) or the player dies (LOST). Once a game is
+     * over, player moves and turns are ignored.
+     */
+    public enum GameState {
+        PLAYING, WON, LOST
+    }
+
+    /**
+     * The default width of the dungeon level, measured in tiles. Engines can
+     * be created with any size up to TileMap.MAX_SIZE.
      */
     public static final int DUNGEON_WIDTH = 25;
 
     /**
-     * The height of the dungeon level, measured in tiles. Changing this may
-     * cause the display to draw incorrectly, and as a minimum the size of the
-     * GUI would need to be adjusted.
+     * The default height of the dungeon level, measured in tiles. Engines can
+     * be created with any size up to TileMap.MAX_SIZE.
      */
     public static final int DUNGEON_HEIGHT = 18;
 
@@ -52,25 +67,132 @@ public class GameEngine {
      */
     public static final int MAX_MONSTERS = 40;
 
+    /**
+     * How far the player and the monsters can see, in tiles. Monsters only
+     * chase the player while they can see each other.
+     */
+    public static final int SIGHT_RADIUS = 8;
+
+    /**
+     * How far from the player, in either direction, monsters are awake, in
+     * tiles. Monsters further away sleep and cost nothing each turn. This is
+     * far enough beyond SIGHT_RADIUS that a monster catching up after waking
+     * can not reach a cell the player can see.
+     */
+    public static final int ACTIVE_RADIUS = 24;
+
+    /**
+     * The most random steps a monster takes when it wakes up, standing in for
+     * the turns it slept through
+     */
+    public static final int CATCH_UP_STEPS = 8;
+
     /**
      * The chance of a wall being generated instead of a floor when generating
      * the level. 1.0 is 100% chance, 0.0 is 0% chance.
      */
     public static final double WALL_CHANCE = 0.05;
     /**
-     * Whether the boss is dead or not. Being true activates the end of the game.
+     * Whether the boss is dead or not. Being true activates the end of the
+     * game. This belongs to a single engine so that many games can run in the
+     * same program without affecting each other.
+     */
+    private boolean bossDead = false;
+
+    /**
+     * The state of this game, changed from PLAYING when the game ends
+     */
+    private GameState state = GameState.PLAYING;
+
+    /**
+     * Result codes returned by movePlayer and used internally when resolving
+     * moves for monsters. MOVE_BLOCKED means the entity did not move,
+     * MOVE_ATTACK means it walked into an enemy, MOVE_PICKUP means the player
+     * moved onto a chest and MOVE_MOVED means an ordinary move.
+     */
+    public static final int MOVE_BLOCKED = 0;
+    public static final int MOVE_ATTACK = 1;
+    public static final int MOVE_PICKUP = 2;
+    public static final int MOVE_MOVED = 3;
+
+    /**
+     * Numbers identifying the random streams used by each part of the game,
+     * passed to RandomStream.derive()
+     */
+    private static final long LEVEL_STREAM = 1;
+    private static final long SPAWN_STREAM = 2;
+    private static final long MONSTER_STREAM = 3;
+    private static final long LOOT_STREAM = 4;
+    private static final long CATCH_UP_STREAM = 5;
+
+    /**
+     * The X and Y steps for the four directions, indexed 0 (up), 1 (right),
+     * 2 (down) and 3 (left) as in MonsterPhase
      */
-    public static boolean bossDead = false;
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
 
     /**
-     * A random number generator that can be used to include randomised choices
-     * in the creation of levels, in choosing places to spawn the player and
-     * monsters, and to randomise movement and damage. This currently uses a
-     * seed value of 123 to generate random numbers - this helps you find bugs
-     * by giving you the same numbers each time you run the program. Remove the
-     * seed value if you want different results each game.
+     * The seed of this game. Every random choice in the game comes from a
+     * stream derived from it, so passing the same seed to the constructor
+     * plays out the same game for the same inputs, which helps find bugs and
+     * lets simulated games be replayed. Loading a saved game replaces it with
+     * the seed of the saved game.
      */
-    private Random rng = new Random();
+    private long seed;
+
+    /**
+     * Separate random streams for creating levels, for choosing places to
+     * spawn the player and monsters, and for the items in chests. The level
+     * and spawn streams are restarted for each level from the seed and the
+     * depth, so the same seed always gives the same levels however many other
+     * random numbers have been used. The loot stream carries on for the whole
+     * game. Monsters do not have a stream of their own; their random moves
+     * hash a seed for the turn, see moveMonsters(). The level stream is also
+     * used by the task generating the next level in the background, see
+     * pregenerateNext().
+     */
+    private final RandomStream levelRng = new RandomStream(0);
+    private final RandomStream spawnRng = new RandomStream(0);
+    private final RandomStream lootRng = new RandomStream(0);
+
+    /**
+     * The stream for a waking monster's catch up steps, restarted for each
+     * monster from the seed, the turn and its slot
+     */
+    private final RandomStream catchUpRng = new RandomStream(0);
+
+    /**
+     * The number of turns the monsters have moved for in this game
+     */
+    private long turn;
+
+    /**
+     * The number of GameState values, used to check a state read from a save
+     */
+    private static final GameState[] STATES = GameState.values();
+
+    /**
+     * The size of the fixed part of a saved game in bytes: width and height
+     * as shorts, depth, the game state and whether the boss is dead, then the
+     * seed, the turn and the spawn and loot stream states as longs, the entry
+     * cell and the number of monsters. The level stream is not saved, as it
+     * is restarted from the seed and the depth for every level.
+     */
+    private static final int SAVE_STATE_BYTES = 2 + 2 + 4 + 1 + 1 + 4 * 8 + 4 + 4;
+
+    /**
+     * The size of the fixed part of each level the player has left in a
+     * saved game: the depth, the entry and exit cells and the number of
+     * monsters, all as ints
+     */
+    private static final int SAVE_LEVEL_BYTES = 4 * 4;
+
+    /**
+     * The width and height of levels created by this engine, measured in tiles
+     */
+    private final int width;
+    private final int height;
 
     /**
      * The current level number for the dungeon. As the player moves down stairs
@@ -80,23 +202,50 @@ public class GameEngine {
     private int depth = 1;  //current dunegeon level
 
     /**
-     * The GUI associated with a GameEngine object. THis link allows the engine
-     * to pass level (tiles) and entity information to the GUI to be drawn.
+     * The view associated with a GameEngine object. This link allows the
+     * engine to pass level (tiles) and entity information to the GUI to be
+     * drawn, and to report combat, chests and the end of the game. It may be a
+     * GameGUI or a HeadlessView.
+     */
+    private GameView view;
+
+    /**
+     * The tiles that represent the current dungeon level. The size of the map
+     * uses the width and height attributes of this engine.
      */
-    private GameGUI gui;
+    private TileMap tiles;
 
     /**
-     * The 2 dimensional array of tiles the represent the current dungeon level.
-     * The size of this array should use the DUNGEON_HEIGHT and DUNGEON_WIDTH
-     * attributes when it is created.
+     * A SpawnIndex used to create and track possible locations to spawn the
+     * player and monsters. It is filled once per level and kept up to date as
+     * chests are opened and entities move, so it always holds the floor tiles
+     * that nothing is standing on. It is created once and reused for every
+     * level.
      */
-    private TileType[][] tiles;
+    private final SpawnIndex spawns;
 
     /**
-     * An ArrayList of Point objects used to create and track possible locations
-     * to spawn the player and monsters.
+     * The last read-only snapshot taken of the tiles. It is handed out again
+     * in each frame until the tiles change, so turns where no tile changes do
+     * not copy anything.
      */
-    private ArrayList<Point> spawns;
+    private TileMap tileSnapshot;
+
+    /**
+     * An OccupancyGrid recording which entity is standing in each tile of the
+     * current level. It is built when a level is created and updated whenever
+     * an entity moves or a monster dies, so collision and attack checks only
+     * need to read a single cell. It is created once and reused for every
+     * level.
+     */
+    private final OccupancyGrid occupancy;
+
+    /**
+     * The slot of the monster walked into by the last player move that
+     * returned MOVE_ATTACK. A monster that returns MOVE_ATTACK has always
+     * walked into the player.
+     */
+    private int moveTarget;
 
     /**
      * An Entity object that is the current player. This object stores the state
@@ -107,44 +256,231 @@ public class GameEngine {
     private Entity player;
 
     /**
-     * An array of Entity objects that represents the monsters in the current
-     * level of the dungeon. Elements in this array should be of the type
-     * Entity, meaning that a monster is alive and needs to be drawn or moved,
-     * or should be null which means nothing is drawn or processed for movement.
-     * Null values in this array are skipped during drawing and movement
-     * processing. Monsters (Entity objects) that die due to player attacks can
-     * be replaced with the value null in this array which removes them from the
-     * game.
+     * An EntityStore holding the monsters in the current level of the dungeon.
+     * Every monster in the store is alive and needs to be drawn or moved.
+     * Monsters that die due to player attacks are removed from the store, which
+     * moves the last monster into the dead monster's slot, so the store never
+     * has gaps.
      */
-    private Entity[] monsters;
+    private EntityStore monsters;
+
+    /**
+     * The levels the player has left, kept so they can be visited again just
+     * as they were left. It is created the first time the player leaves a
+     * level, and emptied when a game starts, ends or is loaded. Loading a game
+     * fills it again with the levels in the save.
+     */
+    private LevelStore levels;
+
+    /**
+     * The packed cell (x + y * width) the player first arrived in on the
+     * current level. The player can climb back up to the level above from
+     * this cell.
+     */
+    private int entryCell;
+
+    /**
+     * Whether the player walked onto the stairs since the last turn. Only
+     * walking onto the stairs takes the player down, so standing on them
+     * (after climbing up, or by waiting or attacking) does not.
+     */
+    private boolean enteredStairs;
+
+    /**
+     * The walking distance from every cell to the player, worked out once per
+     * turn before the monsters move so that every monster can chase the player
+     * by stepping downhill. It is created once and reused for every level.
+     */
+    private final FlowField flow;
+
+    /**
+     * Moves the monsters each turn, on several threads when there are enough
+     * of them. It is created once and reused for every level.
+     */
+    private final MonsterPhase monsterPhase;
+
+    /**
+     * The monsters that are awake this turn, found each turn from the
+     * occupancy grid around the player
+     */
+    private final ActiveSet awake = new ActiveSet();
+
+    /**
+     * The slots of the monsters hit by the player since dead monsters were
+     * last cleaned up. Only these can have died, so only these are checked.
+     */
+    private int[] hurt = new int[4];
+    private int hurtCount;
+
+    /**
+     * The cells the player can see and has explored on the current level. It
+     * is worked out again whenever the player moves or a tile changes, and is
+     * created once and reused for every level.
+     */
+    private final FieldOfView sight;
+
+    /**
+     * The level, tile version and player position the field of view was last
+     * worked out for, and the last read-only snapshot taken of it, which is
+     * null once the field has changed
+     */
+    private TileMap sightTiles;
+    private int sightVersion;
+    private int sightCell = -1;
+    private FieldOfView sightSnapshot;
+
+    /**
+     * Working space for generating levels: the roll of each cell, or -1 for a
+     * wall, and the connected components of the open cells. Both are created
+     * once and reused for every level.
+     */
+    private final byte[] rolls;
+    private final Components components;
+
+    /**
+     * The generator used to lay out the level at each depth, indexed by depth.
+     * Each engine has its own generators, as they keep working arrays between
+     * levels.
+     */
+    private final LevelGenerator[] generators = new LevelGenerator[41];
+
+    /**
+     * Runs the generation of the next level while the current level is
+     * played, or null if levels are only generated when they are reached
+     */
+    private final Executor pregenerator;
+
+    /**
+     * The level being generated in the background, its depth, and whether it
+     * has started, or null if none is. Once it has started it has the working
+     * space above to itself, so nothing else may generate a level until it has
+     * finished. One that has not started yet can be cancelled without
+     * waiting.
+     */
+    private FutureTask<TileMap> pregenerated;
+    private int pregeneratedDepth;
+    private AtomicBoolean pregeneratedStarted;
 
     /**
      * Constructor that creates a GameEngine object and connects it with a
-     * GameGUI object.
+     * GameView object.
+     *
+     * @param view The GameView object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
+     */
+    public GameEngine(GameView view) {
+        this(view, new Random().nextLong(), DUNGEON_WIDTH, DUNGEON_HEIGHT);
+    }
+
+    /**
+     * Constructor that creates a GameEngine object with a seed, so the same
+     * seed always plays out the same game for the same inputs.
      *
-     * @param gui The GameGUI object that this engine will pass information to
-     * in order to draw levels and entities to the screen.
+     * @param view The GameView object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
+     * @param seed The seed for this engine's random streams
      */
-    public GameEngine(GameGUI gui) {
-        this.gui = gui;
+    public GameEngine(GameView view, long seed) {
+        this(view, seed, DUNGEON_WIDTH, DUNGEON_HEIGHT);
+    }
+
+    /**
+     * Constructor that creates a GameEngine object with a seed and levels of a
+     * chosen size.
+     *
+     * @param view The GameView object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
+     * @param seed The seed for this engine's random streams
+     * @param width The width of each level in tiles
+     * @param height The height of each level in tiles
+     * @throws IllegalArgumentException if the size is not between
+     * TileMap.MIN_SIZE and TileMap.MAX_SIZE
+     */
+    public GameEngine(GameView view, long seed, int width, int height) {
+        this(view, seed, width, height, null);
+    }
+
+    /**
+     * Constructor that creates a GameEngine object with a seed and levels of a
+     * chosen size, which generates the next level in the background while the
+     * current one is played. Headless and batch games should use the other
+     * constructors, so each game only runs on the thread that plays it.
+     *
+     * @param view The GameView object that this engine will pass information
+     * to in order to draw levels and entities to the screen.
+     * @param seed The seed for this engine's random streams
+     * @param width The width of each level in tiles
+     * @param height The height of each level in tiles
+     * @param pregenerator Runs the generation of the next level, or null to
+     * generate each level when it is reached
+     * @throws IllegalArgumentException if the size is not between
+     * TileMap.MIN_SIZE and TileMap.MAX_SIZE
+     */
+    public GameEngine(GameView view, long seed, int width, int height, Executor pregenerator) {
+        this.view = view;
+        this.pregenerator = pregenerator;
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        spawns = new SpawnIndex(width, height);
+        occupancy = new OccupancyGrid(width, height);
+        flow = new FlowField(width, height);
+        monsterPhase = new MonsterPhase(width, height);
+        sight = new FieldOfView(width, height, SIGHT_RADIUS);
+        rolls = new byte[width * height];
+        components = new Components(width * height);
+        //open levels to start with, then rooms, caves and tunnels, and an
+        //open arena for the boss
+        setGenerator(1, 5, new NoiseGenerator(10));
+        setGenerator(6, 20, new RoomsGenerator());
+        setGenerator(21, 35, new CaveGenerator());
+        setGenerator(36, 39, new DrunkardGenerator());
+        setGenerator(40, 40, new NoiseGenerator(0));
         startGame();
     }
 
     /**
-     * Generates a new dungeon level. The method builds a 2D array of TileType
+     * Generates a new dungeon level. The method builds a TileMap of TileType
      * values that will be used to draw tiles to the screen and to add a variety
      * of elements into each level. Tiles can be floors, walls, stairs (to
      * progress to the next level of the dungeon) or chests. The method should
      * contain the implementation of an algorithm to create an interesting and
-     * varied level each time it is called.
+     * varied level each time it is called. The level only depends on the seed
+     * of the game and the current depth.
      *
-     * @return A 2D array of TileTypes representing the tiles in the current
-     * level of the dungeon. The size of this array should use the width and
-     * height of the dungeon.
+     * If the level for the current depth was started in the background it is
+     * returned instead, waiting for it to finish if needed. It is the same
+     * level either way.
+     *
+     * @return A TileMap representing the tiles in the current level of the
+     * dungeon, using the width and height of this engine.
      */
-    private TileType[][] generateLevel() {
-        //create new level
-        TileType[][] level = new TileType[DUNGEON_WIDTH][DUNGEON_HEIGHT];
+    TileMap generateLevel() {
+        boolean ready = pregenerated != null && pregeneratedDepth == depth;
+        TileMap level = cancelPregenerated();
+        return ready && level != null ? level : generateLevel(depth);
+    }
+
+    /**
+     * Generates the level for a depth. This is called on the engine's thread,
+     * or on a background thread for the next level. The walls are laid out by
+     * the LevelGenerator chosen for the current depth. Every open cell is then
+     * rolled in a first pass, which also joins each open cell to the open
+     * cells above and to the left of it, so the connected components are
+     * known by the end of the pass. The second pass writes the tiles, and
+     * only the largest component is kept open: smaller pockets are filled in
+     * with walls, so the stairs, the chests and every spawn can always be
+     * reached from each other.
+     *
+     * @param depth The depth to generate the level for
+     * @return A TileMap representing the tiles in the level, using the width
+     * and height of this engine.
+     */
+    private TileMap generateLevel(int depth) {
+        //create new level, every tile starts as a wall
+        TileMap level = new TileMap(width, height);
+        //restart the level stream for this depth
+        levelRng.setState(RandomStream.derive(seed, LEVEL_STREAM, depth));
         //stuff for spawning appropriate amount of chests
         boolean noStairs = false;
         boolean chestDepth = false;
@@ -170,35 +506,81 @@ public class GameEngine {
         } else {
             maxChests = 2;
         }
-        //generating the level
-        for (int i = 0; i < DUNGEON_WIDTH; i++) { //loop through the x axis
-            for (int j = 0; j < DUNGEON_HEIGHT; j++) { //loop through the y axis
-                int randInt = rng.nextInt(100); //generate a random number between 0 and 99 (inclusive)
-                if (i == 0 || j == 0 || i == (DUNGEON_WIDTH - 1) || j == (DUNGEON_HEIGHT - 1)) { //make the outer border a wall
-                    level[i][j] = TileType.WALL;
-                } else if (randInt >= 90) { // if the random number >= 90, it makes it a wall, unless it's level 40, then it will spawn a floor
-                    if (depth == 40) {
-                        level[i][j] = TileType.FLOOR;
+        //lay out the walls
+        Arrays.fill(rolls, LevelGenerator.WALL);
+        generatorFor(depth).carve(rolls, width, height, levelRng);
+        //first pass: roll every open cell and join them into components.
+        //root is the root of the run of open cells the loop is in
+        components.clear();
+        int root = -1;
+        for (int j = 0; j < height; j++) { //loop through the y axis
+            for (int i = 0; i < width; i++) { //loop through the x axis
+                int c = cellIndex(i, j);
+                if (i == 0 || j == 0 || i == (width - 1) || j == (height - 1)) { //make the outer border a wall
+                    rolls[c] = -1;
+                } else if (rolls[c] == LevelGenerator.WALL) { //walls laid out by the generator
+                    rolls[c] = -1;
+                } else {
+                    rolls[c] = (byte) levelRng.nextInt(100); //generate a random number between 0 and 99 (inclusive)
+                    //the border is always a wall, so the cells to the left
+                    //and above are inside the level
+                    boolean left = rolls[c - 1] >= 0;
+                    if (left) {
+                        root = components.addTo(c, root);
                     } else {
-                        level[i][j] = TileType.WALL;
+                        components.add(c);
+                        root = c;
+                    }
+                    //the cell above was already joined if the cells to the
+                    //left and above-left are open too
+                    if (rolls[c - width] >= 0 && !(left && rolls[c - width - 1] >= 0)) {
+                        root = components.union(root, c - width);
                     }
+                }
+            }
+        }
+        //second pass: write the tiles, keeping only the largest component
+        int largest = components.largest();
+        int lastOpen = -1;
+        byte[] row = new byte[width];
+        boolean keep = false;
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                int c = cellIndex(i, j);
+                int randInt = rolls[c];
+                //a run of open cells is all in one component, so only the
+                //first cell of each run needs looking up
+                if (randInt >= 0 && rolls[c - 1] < 0) {
+                    keep = components.find(c) == largest;
+                }
+                TileType tile;
+                if (randInt < 0 || !keep) { //walls, and open cells cut off from the rest
+                    tile = TileType.WALL;
                 } else if (randInt >= 70 && noStairs == false) { // if number is greater than or equal to 70 and no stairs are spawned, it spawns a stairs.
-                    level[i][j] = TileType.STAIRS;
+                    tile = TileType.STAIRS;
                     //set nostairs to true to stop more stairs
                     noStairs = true;
                 } else if (randInt < 15 && chestDepth == false) { // if number is less than 15 and there are less chests than the level is meant to have
                     if (chestCount >= maxChests) {//check if there are too many chests
-                        level[i][j] = TileType.FLOOR;
+                        tile = TileType.FLOOR;
                         chestDepth = true;
                     } else {
-                        level[i][j] = TileType.CHEST; //put a chest there if it isnt
+                        tile = TileType.CHEST; //put a chest there if it isnt
                         chestCount++;
                     }
                 } else { // if the number isnt ordinary 
-                    level[i][j] = TileType.FLOOR;
+                    tile = TileType.FLOOR;
                 }
-
+                if (tile == TileType.FLOOR) {
+                    lastOpen = c;
+                }
+                row[i] = (byte) tile.ordinal();
             }
+            level.setRow(j, row);
+        }
+        //no cell rolled high enough for the stairs, so use the last floor
+        if (noStairs == false && lastOpen != -1) {
+            level.set(lastOpen % width, lastOpen / width, TileType.STAIRS);
         }
         //return the level
         return level;
@@ -206,48 +588,207 @@ public class GameEngine {
     }
 
     /**
-     * Generates spawn points for the player and monsters. The method processes
-     * the tiles array and finds tiles that are suitable for spawning, i.e.
-     * tiles that are not walls or stairs. Suitable tiles should be added to the
-     * ArrayList that will contain Point objects - Points are a simple kind of
-     * object that contain an X and a Y co-ordinate stored using the int
-     * primitive type and are part of the Java language (search for the Point
-     * API documentation and examples of their use)
-     *
-     * @return An ArrayList containing Point objects representing suitable X and
-     * Y co-ordinates in the current level that the player or monsters can be
-     * spawned in
-     */
-    private ArrayList<Point> getSpawns() {
-        ArrayList<Point> s = new ArrayList<>();
-        for (int i = 0; i < DUNGEON_WIDTH; i++) { //loop through x axis
-            for (int j = 0; j < DUNGEON_HEIGHT; j++) { //loop through y axis
-                if (tiles[i][j] == TileType.FLOOR) { //if the tile is a floor
-                    s.add(new Point(i, j)); //it adds it to the arraylist
+     * Chooses the generator used to lay out the levels in a range of depths.
+     * The levels of a game depend on its generators as well as its seed, so
+     * generators should be chosen before the game starts, and a saved game
+     * should be loaded by an engine with the same generators.
+     *
+     * @param first the first depth to use the generator for
+     * @param last the last depth to use the generator for
+     * @param generator the generator to use, which must not be shared with
+     * another engine
+     * @throws IllegalArgumentException if the depths are not between 1 and 40
+     * or last is before first
+     */
+    public void setGenerator(int first, int last, LevelGenerator generator) {
+        if (first < 1 || last >= generators.length || last < first) {
+            throw new IllegalArgumentException("Depths must be between 1 and "
+                    + (generators.length - 1) + ", were " + first + " to " + last);
+        }
+        //the level being generated may be using the old generator
+        cancelPregenerated();
+        Arrays.fill(generators, first, last + 1, generator);
+    }
 
-                }
+    /**
+     * Starts generating the level below the current one in the background, so
+     * descendLevel() can use it straight away. Nothing is started if this
+     * engine has no pregenerator, if that level is stored already, or if the
+     * current level is the last one.
+     */
+    private void pregenerateNext() {
+        int next = depth + 1;
+        if (pregenerated != null && pregeneratedDepth == next) {
+            return;
+        }
+        cancelPregenerated();
+        if (pregenerator == null || next >= generators.length
+                || (levels != null && levels.contains(next))) {
+            return;
+        }
+        //the task only generates the level if it starts before it is cancelled
+        AtomicBoolean started = new AtomicBoolean();
+        pregenerated = new FutureTask<>(() -> started.compareAndSet(false, true) ? generateLevel(next) : null);
+        pregeneratedDepth = next;
+        pregeneratedStarted = started;
+        try {
+            pregenerator.execute(pregenerated);
+        } catch (RejectedExecutionException e) {
+            //the pregenerator has been shut down, so the level is generated
+            //when it is reached
+            cancelPregenerated();
+        }
+    }
 
+    /**
+     * Stops the level being generated in the background, after which the
+     * working space can be used again. A level that has not started yet is
+     * never generated. One that has started is waited for and returned, as
+     * it is using the working space.
+     *
+     * @return the level if it had started, or null
+     */
+    private TileMap cancelPregenerated() {
+        FutureTask<TileMap> f = pregenerated;
+        if (f == null) {
+            return null;
+        }
+        pregenerated = null;
+        if (pregeneratedStarted.compareAndSet(false, true)) {
+            //it had not started, so it never will
+            f.cancel(false);
+            return null;
+        }
+        //the level has to finish even if this thread is interrupted, as it is
+        //using the working space
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return f.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
+    /**
+     * Returns the generator used to lay out the level at a depth
+     *
+     * @param depth the depth of the level
+     * @return the generator for that depth
+     */
+    LevelGenerator generatorFor(int depth) {
+        return generators[Math.max(1, Math.min(depth, generators.length - 1))];
+    }
+
+    /**
+     * Generates spawn points for the player and monsters. The method processes
+     * the tiles array once and finds tiles that are suitable for spawning, i.e.
+     * tiles that are not walls, stairs or chests. Suitable tiles are added to
+     * the engine's SpawnIndex as packed cells (x + y * width), after emptying
+     * it, so no arrays are created for each level. This should only be called
+     * once per level, the index is then kept up to date by the engine. It also
+     * restarts the spawn stream for the current depth.
+     *
+     * @return The engine's SpawnIndex, now containing the cells in the current
+     * level that the player or monsters can be spawned in
+     */
+    SpawnIndex getSpawns() {
+        SpawnIndex s = spawns;
+        s.clear();
+        spawnRng.setState(RandomStream.derive(seed, SPAWN_STREAM, depth));
+        for (int j = 0; j < height; j++) { //loop through y axis
+            for (int i = 0; i < width; i++) { //loop through x axis
+                if (tiles.get(i, j) == TileType.FLOOR) { //if the tile is a floor
+                    s.add(cellIndex(i, j)); //it adds it to the index
+                }
+            }
         }
-        //return the arraylist
+        //return the index
         return s;
     }
 
+    /**
+     * Packs an X and Y co-ordinate into a single int, used as the key for
+     * cells in the spawn index
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     * @return the packed cell, x + y * width
+     */
+    private int cellIndex(int x, int y) {
+        return x + y * width;
+    }
+
+    /**
+     * Moves an entity to a new position and keeps the spawn index up to date,
+     * so the cell being left becomes free (if it is a floor) and the cell being
+     * entered is no longer free. All entity movement should go through this
+     * method rather than calling setPosition directly.
+     *
+     * @param s The EntityStore holding the entity being moved
+     * @param i The slot of the entity in the store
+     * @param x The new X position for the entity
+     * @param y The new Y position for the entity
+     */
+    private void moveEntity(EntityStore s, int i, int x, int y) {
+        int oldX = s.getX(i);
+        int oldY = s.getY(i);
+        //the old cell is free again if it is a floor
+        if (tiles.get(oldX, oldY) == TileType.FLOOR) {
+            spawns.add(cellIndex(oldX, oldY));
+        }
+        //the new cell is taken
+        spawns.remove(cellIndex(x, y));
+        //carry the entity's id across to the new cell
+        occupancy.move(oldX, oldY, x, y);
+        s.setPosition(i, x, y);
+    }
+
+    /**
+     * Builds the occupancy grid for the current level from the positions of
+     * the player and the monsters. Called once whenever a level is created,
+     * and empties the grid first rather than creating a new one.
+     */
+    private void buildOccupancy() {
+        occupancy.clear();
+        for (int i = 0; i < monsters.size(); i++) {
+            occupancy.set(monsters.getX(i), monsters.getY(i), OccupancyGrid.monsterId(i));
+        }
+        if (player != null) {
+            occupancy.set(player.getX(), player.getY(), OccupancyGrid.PLAYER);
+        }
+    }
+
     /**
      * Spawns monsters in suitable locations in the current level. The method
-     * uses the spawns ArrayList to pick suitable positions to add monsters,
-     * removing these positions from the spawns ArrayList as they are used
-     * (using the remove() method) to avoid multiple monsters spawning in the
-     * same location. The method creates monsters by instantiating the Entity
-     * class, setting health, and setting the X and Y position for the monster
-     * using the X and Y values in the Point object removed from the spawns
-     * ArrayList.
-     *
-     * @return A array of Entity objects representing the monsters for the
-     * current level of the dungeon
-     */
-    private Entity[] spawnMonsters() {
+     * uses the spawns index to pick suitable positions to add monsters,
+     * removing these positions from the index as they are used (using the
+     * takeRandom() method) to avoid multiple monsters spawning in the same
+     * location. The method creates monsters by adding them to an EntityStore,
+     * setting health, and setting the X and Y position for the monster using
+     * the cell taken from the spawns index. If the level runs out of free
+     * cells fewer monsters are spawned.
+     *
+     * @return An EntityStore holding the monsters for the current level of the
+     * dungeon
+     */
+    private EntityStore spawnMonsters() {
         //maximum monsters for the level
         int maxMonsters;
         //first 5 levels
@@ -269,48 +810,67 @@ public class GameEngine {
         } else {
             maxMonsters = 2;
         }
-        //create array with length of the maximum monsters
-        Entity[] monsters = new Entity[maxMonsters];
-        //loop through the array
-        for (int i = 0; i < monsters.length; i++) {
-            //generate a random number the size of getspawns
-            int n = rng.nextInt(getSpawns().size());
-            //creates a x and y value with the randomly generated index's x and y value
-            int x = getSpawns().get(n).x;
-            int y = getSpawns().get(n).y;
-            //remove the index from getspawns
-            getSpawns().remove(n);
+        return spawnMonsters(maxMonsters);
+    }
+
+    /**
+     * Spawns a fixed number of monsters in suitable locations in the current
+     * level, using the spawns index in the same way as spawnMonsters(). The
+     * monsters are not put in the level; that is left to the caller, so
+     * benchmarks can call this on its own.
+     *
+     * @param maxMonsters The number of monsters to spawn
+     * @return An EntityStore holding the monsters for the current level of the
+     * dungeon
+     */
+    EntityStore spawnMonsters(int maxMonsters) {
+        //create a store big enough for the maximum monsters
+        EntityStore monsters = new EntityStore(maxMonsters);
+        //loop until there are enough monsters
+        for (int i = 0; i < maxMonsters; i++) {
+            //take a random free cell out of the spawn index
+            int cell = spawns.takeRandom(spawnRng);
+            //no free cells left, so stop with the monsters spawned so far
+            if (cell == -1) {
+                break;
+            }
+            //unpack the x and y value of the cell
+            int x = cell % width;
+            int y = cell / width;
             //is boss
             if (depth == 40) {
                 //5000 health because chests are broken and I dont want to fix it.
-                monsters[i] = new Entity(5000, x, y, EntityType.MONSTER);
-                monsters[i].changeDamage(70);
+                int boss = monsters.add(5000, x, y, EntityType.MONSTER);
+                monsters.setDamage(boss, 70);
             } else {
                 //regular monster
-                monsters[i] = new Entity(50, x, y, EntityType.MONSTER);
+                monsters.add(50, x, y, EntityType.MONSTER);
             }
+            //new monsters have not slept through any turns
+            monsters.setAwakeTurn(monsters.size() - 1, turn - 1);
         }
-        //return the array
+        //return the store
         return monsters;
 
     }
 
     /**
-     * Spawns a player entity in the game. The method uses the spawns ArrayList
-     * to select a suitable location to spawn the player and removes the Point
-     * from the spawns ArrayList. The method instantiates the Entity class and
+     * Spawns a player entity in the game. The method uses the spawns index to
+     * select a suitable location to spawn the player and removes the cell from
+     * the spawns index. The method instantiates the Entity class and
      * assigns values for the health, position and type of Entity.
      *
      * @return An Entity object representing the player in the game
+     * @throws IllegalStateException if the level has no free cell left
      */
     private Entity spawnPlayer() {
-        //generate a random number from the size of getspawns
-        int n = rng.nextInt(getSpawns().size());
-        //get the x and y values of that point
-        int x = getSpawns().get(n).x;
-        int y = getSpawns().get(n).y;
-        //remove the point from getspawns
-        getSpawns().remove(n);
+        //take a random free cell out of the spawn index
+        int cell = takePlayerCell();
+        //get the x and y values of that cell
+        int x = cell % width;
+        int y = cell / width;
+        //this is where the player climbs back up from
+        entryCell = cell;
         //create a new player
         Entity player = new Entity(100, x, y, EntityType.PLAYER);
         //return the player
@@ -329,44 +889,7 @@ public class GameEngine {
      * wall etc.
      */
     public void movePlayerLeft() {
-        //get player x and y co-ordinates
-        int x = player.getX();
-        int y = player.getY();
-        //used for monster checking and combat
-        int i;
-        //whether the monster is to the left or not
-        boolean monsterLeft = false;
-        //loop through the monster array
-        for (i = 0; i < monsters.length; i++) {
-            //if the monsters isnt null so it doesnt error on me and i dont want to deal with try/catch
-            if (monsters[i] != null) {
-                //check if the monster is there
-                if ((x - 1) == monsters[i].getX() && y == monsters[i].getY()) {
-                    //if it is, boolean is true and break out of loop
-                    monsterLeft = true;
-                    break;
-                }
-            }
-        }
-        //if the player is trying to walk into a wall
-        if (tiles[(x - 1)][y] == TileType.WALL) {
-            //if the player is trying to fight a monster
-        } else if (monsterLeft) {
-            //hit the monster
-            hitMonster(monsters[i]);
-            //if the player moves onto the chest
-        } else if (tiles[(x - 1)][y] == TileType.CHEST) {
-            //open the chest
-            openChest();
-            //hopefully something good was in there
-            //move the player
-            player.setPosition((x - 1), y);
-            //set the chest to a floor so they cant open multiple chests
-            tiles[(x - 1)][y] = TileType.FLOOR;
-        } else {
-            //just move the player
-            player.setPosition((x - 1), y);
-        }
+        movePlayer(-1, 0);
     }
 
     /**
@@ -381,44 +904,7 @@ public class GameEngine {
      * wall etc.
      */
     public void movePlayerRight() {
-        //get player x and y co-ordinates
-        int x = player.getX();
-        int y = player.getY();
-        //used for monster checking and combat
-        int i;
-        //whether the monster is to the right or not
-        boolean monsterRight = false;
-        //loop through the monsters array
-        for (i = 0; i < monsters.length; i++) {
-            //if the monster exists...          but what is existence?
-            if (monsters[i] != null) {
-                //if the monster is where the player is trying to move to
-                if ((x + 1) == monsters[i].getX() && y == monsters[i].getY()) {
-                    //boolean is true
-                    monsterRight = true;
-                    //the loop breaks
-                    break;
-                }
-            }
-        }
-        //if the players walks into a wall
-        if (tiles[(x + 1)][y] == TileType.WALL) {
-            //if the monster is to the right of the player
-        } else if (monsterRight) {
-            //punch the monster
-            hitMonster(monsters[i]);
-        } else if (tiles[(x + 1)][y] == TileType.CHEST) {
-            //open a chest
-            openChest();
-            //move
-            player.setPosition((x + 1), y);
-            //change the tile to a floor
-            tiles[(x + 1)][y] = TileType.FLOOR;
-            //if everything is normal
-        } else {
-            player.setPosition((x + 1), y);
-        }
-
+        movePlayer(1, 0);
     }
 
     /**
@@ -432,38 +918,7 @@ public class GameEngine {
      * a monster in the tile above the player, or breaking a wall etc.
      */
     public void movePlayerUp() {
-        //get player x and y
-        int x = player.getX();
-        int y = player.getY();
-        //monster id
-        int i;
-        //if there is a monster above
-        boolean monsterUp = false;
-        //loop through monsters
-        for (i = 0; i < monsters.length; i++) {
-            //if the monster is there
-            if (monsters[i] != null) {
-                //check if there is a monster
-                if (x == monsters[i].getX() && (y - 1) == monsters[i].getY()) {
-                    monsterUp = true;
-                    break;
-                }
-            }
-        }
-        //ouch i walked into a wall
-        if (tiles[x][(y - 1)] == TileType.WALL) {
-            //fight the monster
-        } else if (monsterUp) {
-            hitMonster(monsters[i]);
-            //chest 
-        } else if (tiles[x][(y - 1)] == TileType.CHEST) {
-            openChest();
-            player.setPosition(x, (y - 1));
-            tiles[x][(y - 1)] = TileType.FLOOR;
-            //regular floor
-        } else {
-            player.setPosition(x, (y - 1));
-        }
+        movePlayer(0, -1);
     }
 
     /**
@@ -477,137 +932,222 @@ public class GameEngine {
      * a monster in the tile below the player, or breaking a wall etc.
      */
     public void movePlayerDown() {
-        //you know what all this does by now hopefully but if not
-        //get x and y
-        int x = player.getX();
-        int y = player.getY();
-        //loop counter and monster identifier
-        int i;
-        //booooooooolean
-        boolean monsterDown = false;
-        //loop monsters
-        for (i = 0; i < monsters.length; i++) {
-            //monsters arent even people, but they arent null
-            if (monsters[i] != null) {
-                //if the monster decided to be there
-                if (x == monsters[i].getX() && (y + 1) == monsters[i].getY()) {
-                    monsterDown = true;
-                    //DON'T GO BREAKING MY HEART
-                    break;
+        movePlayer(0, 1);
+    }
+
+    /**
+     * Moves the player one step in the given direction. The move is worked out
+     * by resolveMove, then the result is acted on here: attacking a monster
+     * hits it and moving onto a chest opens it.
+     *
+     * @param dx The change in X position, -1, 0 or 1
+     * @param dy The change in Y position, -1, 0 or 1
+     * @return The result of the move, one of MOVE_BLOCKED, MOVE_ATTACK,
+     * MOVE_PICKUP or MOVE_MOVED
+     */
+    public int movePlayer(int dx, int dy) {
+        //nothing moves once the game is over
+        if (state != GameState.PLAYING) {
+            return MOVE_BLOCKED;
+        }
+        int result = resolveMove(player.getStore(), player.getIndex(), dx, dy);
+        switch (result) {
+            //the player walked into a monster
+            case MOVE_ATTACK:
+                hitMonster(moveTarget);
+                break;
+            //the player walked onto a chest
+            case MOVE_PICKUP:
+                openChest();
+                break;
+            //the player walked onto the stairs, which takes them down at the
+            //end of the turn
+            case MOVE_MOVED:
+                if (tiles.get(player.getX(), player.getY()) == TileType.STAIRS) {
+                    enteredStairs = true;
+                }
+                break;
+            default:
+        }
+        return result;
+    }
+
+    /**
+     * Works out what happens when an entity tries to step in a direction, and
+     * moves the entity if the step is allowed. The rules are in checkMove(),
+     * which this shares with MonsterPhase; this method only carries out the
+     * result for a single entity. It does not attack anything, open chests or
+     * talk to the GUI; it only returns a result code and leaves the caller to
+     * act on it. The player attacking a monster leaves the monster's slot in
+     * the moveTarget attribute, and the player picking up a chest turns the
+     * chest tile into a floor.
+     *
+     * @param s The EntityStore holding the entity that is moving
+     * @param i The slot of the entity in the store
+     * @param dx The change in X position
+     * @param dy The change in Y position
+     * @return MOVE_BLOCKED if nothing happened, MOVE_ATTACK if the entity
+     * walked into an enemy, MOVE_PICKUP if the player moved onto a chest, or
+     * MOVE_MOVED for an ordinary move
+     */
+    private int resolveMove(EntityStore s, int i, int dx, int dy) {
+        //where the entity is trying to go
+        int x = s.getX(i) + dx;
+        int y = s.getY(i) + dy;
+        boolean isPlayer = s.getType(i) == EntityType.PLAYER;
+        int result = checkMove(tiles, occupancy, isPlayer, x, y);
+        switch (result) {
+            case MOVE_ATTACK:
+                if (isPlayer) {
+                    //remember which monster the player walked into
+                    moveTarget = OccupancyGrid.monsterIndex(occupancy.get(x, y));
                 }
+                break;
+            case MOVE_PICKUP:
+                //set the chest to a floor so they cant open multiple chests
+                tiles.set(x, y, TileType.FLOOR);
+                flow.tileChanged(tiles, x, y);
+                moveEntity(s, i, x, y);
+                break;
+            case MOVE_MOVED:
+                //just move
+                moveEntity(s, i, x, y);
+                break;
+            default:
+        }
+        return result;
+    }
+
+    /**
+     * Works out what would happen if an entity stepped into a cell, without
+     * changing anything. These are the rules for every move in the game:
+     * walls and other monsters block movement, the player attacks monsters
+     * and monsters attack the player, and only the player picks up chests;
+     * monsters walk over them. It only reads the tiles and the occupancy grid,
+     * so the stripes of MonsterPhase can call it at the same time.
+     *
+     * @param tiles The level
+     * @param occupancy The occupancy grid of the level
+     * @param isPlayer Whether the entity moving is the player
+     * @param x The X position of the cell being entered
+     * @param y The Y position of the cell being entered
+     * @return MOVE_BLOCKED if nothing would happen, MOVE_ATTACK if the entity
+     * would walk into an enemy, MOVE_PICKUP if the player would move onto a
+     * chest, or MOVE_MOVED for an ordinary move
+     */
+    static int checkMove(TileMap tiles, OccupancyGrid occupancy, boolean isPlayer, int x, int y) {
+        int tile = tiles.getOrdinal(x, y);
+        //walls stop everything
+        if (tile == TileType.WALL.ordinal()) {
+            return MOVE_BLOCKED;
+        }
+        //check whoever is standing there
+        int id = occupancy.get(x, y);
+        if (id != OccupancyGrid.EMPTY) {
+            if (isPlayer ? id != OccupancyGrid.PLAYER : id == OccupancyGrid.PLAYER) {
+                //player walks into a monster, or monster walks into the player
+                return MOVE_ATTACK;
             }
+            //monsters dont walk into each other
+            return MOVE_BLOCKED;
         }
-        //stop walking into walls
-        if (tiles[x][(y + 1)] == TileType.WALL) {
-            //monster punching 101
-        } else if (monsterDown) {
-            hitMonster(monsters[i]);
-            //chests
-        } else if (tiles[x][(y + 1)] == TileType.CHEST) {
-            openChest();
-            player.setPosition(x, (y + 1));
-            tiles[x][(y + 1)] = TileType.FLOOR;
-            //if the players being boring
-        } else {
-            player.setPosition(x, (y + 1));
+        //only the player opens chests
+        if (isPlayer && tile == TileType.CHEST.ordinal()) {
+            return MOVE_PICKUP;
         }
+        return MOVE_MOVED;
     }
 
     /**
      * Reduces a monster's health in response to the player attempting to move
      * into the same square as the monster (attacking the monster).
      *
-     * @param m The Entity which is the monster that the player is attacking
+     * @param m The slot of the monster that the player is attacking
      */
-    private void hitMonster(Entity m) {
+    private void hitMonster(int m) {
         //change the health equal to -player damage
-        m.changeHealth(-player.getDamage());
+        monsters.changeHealth(m, -player.getDamage());
+        //remember it so it is checked when dead monsters are cleaned up
+        if (hurtCount == hurt.length) {
+            hurt = Arrays.copyOf(hurt, hurtCount * 2);
+        }
+        hurt[hurtCount++] = m;
         //call the dialog box to display a message
-        gui.combatDialog("Monster took " + String.valueOf(player.getDamage()) + " damage");
+        view.combatDialog("Monster took " + String.valueOf(player.getDamage()) + " damage");
     }
 
     /**
-     * Moves all monsters on the current level. The method processes all
-     * non-null elements in the monsters array and calls the moveMonster method
-     * for each one.
+     * Moves the monsters on the current level. Only the monsters within
+     * ACTIVE_RADIUS of the player are awake; the rest sleep and are not
+     * looked at, so the cost of a turn follows the number of monsters near
+     * the player. Monsters that have just woken up first catch up on the
+     * turns they slept through. The method then works out what the player
+     * can see and the distance to the player from the monsters that can see
+     * them, and has the monster phase move the awake monsters, which it may do
+     * on several threads. The free cells and the hits on the player are then
+     * updated on this thread, in a fixed order, so a seeded game always plays
+     * out the same way.
      */
-    private void moveMonsters() {
-        //loop
-        for (int i = 0; i < monsters.length; i++) {
-            //if the monster is there
-            if (monsters[i] != null) {
-                moveMonster(monsters[i]);
+    void moveMonsters() {
+        //only the monsters near the player are awake. with no player to be
+        //near, every monster is
+        if (player != null) {
+            awake.collect(occupancy, monsters, width, height, player.getX(), player.getY(), ACTIVE_RADIUS);
+        } else {
+            awake.all(monsters.size());
+        }
+        //monsters that have just woken up catch up on the turns they slept
+        for (int k = 0; k < awake.size(); k++) {
+            int i = awake.get(k);
+            long slept = turn - 1 - monsters.getAwakeTurn(i);
+            if (slept > 0) {
+                catchUp(i, slept);
+            }
+            monsters.setAwakeTurn(i, turn);
+        }
+        //one search from the player is shared by every monster, and only goes
+        //as far as the furthest monster that can see the player
+        if (player != null) {
+            updateSight();
+            flow.compute(tiles, player.getX(), player.getY(), monsters, awake, sight);
+        }
+        //one seed per turn for random moves, mixed with each monster's slot so
+        //the moves do not depend on the order the monsters are processed in
+        long turnSeed = RandomStream.derive(seed, MONSTER_STREAM, turn++);
+        monsterPhase.run(tiles, occupancy, monsters, awake, flow, player != null ? sight : null, turnSeed);
+        //the cells left are free again if they are floors, and the cells
+        //entered are taken
+        for (int k = 0; k < monsterPhase.getMoveCount(); k++) {
+            int from = monsterPhase.getMoveFrom(k);
+            if (tiles.get(from % width, from / width) == TileType.FLOOR) {
+                spawns.add(from);
+            }
+            spawns.remove(monsterPhase.getMoveTo(k));
+        }
+        //hit the player once for every monster that walked into them
+        for (int k = 0; k < awake.size(); k++) {
+            if (monsterPhase.attacked(awake.get(k))) {
+                hitPlayer(awake.get(k));
             }
         }
     }
 
     /**
-     * Moves a specific monster in the game. The method updates the X and Y
-     * attributes of the monster Entity to reflect its new position.
+     * Stands in for the turns a monster slept through with a few random
+     * steps, rather than moving it for every one of them. The steps never
+     * attack, and the monster wakes far enough from the player that they can
+     * not bring it into sight. The steps only depend on the seed, the turn and
+     * the monster's slot.
      *
-     * @param m The Entity (monster) that needs to be moved
+     * @param i The slot of the monster that has woken up
+     * @param slept The number of turns it slept through
      */
-    private void moveMonster(Entity m) {
-        //generates a number between 1 and 4
-        int randomNo = rng.nextInt(4);
-        //get x and y of the monster
-        int x = m.getX();
-        int y = m.getY();
-        //switch the case 
-        switch (randomNo) {
-            //i didn't check whether there was a monster where the monster is trying to move to because "the monsters have team co-ordination"
-            //if 0 (move up)
-            case 0:
-                //walk into a wall
-                if (tiles[x][(y - 1)] == TileType.WALL) {
-                    //combat
-                } else if (x == player.getX() && (y - 1) == player.getY()) {
-                    hitPlayer(m);
-                    //move
-                } else {
-                    m.setPosition(x, (y - 1));
-                }
-                break;
-            //if 1 (move right)
-            case 1:
-                //wall protection
-                if (tiles[(x + 1)][(y)] == TileType.WALL) {
-                    m.setPosition(x, y);
-                    //combat
-                } else if ((x + 1) == player.getX() && y == player.getY()) {
-                    hitPlayer(m);
-                    //move
-                } else {
-                    m.setPosition((x + 1), y);
-                }
-                break;
-            //if 2 (move down)
-            case 2:
-                //wall
-                if (tiles[x][(y + 1)] == TileType.WALL) {
-                    //combat
-                } else if (x == player.getX() && (y + 1) == player.getY()) {
-                    hitPlayer(m);
-                    //move
-                } else {
-                    m.setPosition(x, (y + 1));
-                }
-                break;
-            //if 3 (move left)
-            case 3:
-                //wall
-                if (tiles[(x - 1)][y] == TileType.WALL) {
-                    //combat
-                } else if ((x - 1) == player.getX() && y == player.getY()) {
-                    hitPlayer(m);
-                    //move
-                } else {
-                    m.setPosition((x - 1), y);
-                }
-                break;
-            //if the number breaks 
-            default:
-                m.setPosition(x, y);
+    private void catchUp(int i, long slept) {
+        catchUpRng.setState(RandomStream.mix(RandomStream.derive(seed, CATCH_UP_STREAM, turn) + i));
+        for (long step = Math.min(slept, CATCH_UP_STEPS); step > 0; step--) {
+            int d = catchUpRng.nextInt(4);
+            //blocked steps and steps into the player are just skipped
+            resolveMove(monsters, i, DIRECTION_X[d], DIRECTION_Y[d]);
         }
     }
 
@@ -615,8 +1155,10 @@ public class GameEngine {
      * Reduces the health of the player when hit by a monster - a monster next
      * to the player can attack it instead of moving and should call this method
      * to reduce the player's health
+     *
+     * @param m The slot of the monster hitting the player
      */
-    private void hitPlayer(Entity m) {
+    private void hitPlayer(int m) {
         //armour is a thing i implemented
         if (player.getArmour() > 0) {
             //take more armour in the final level
@@ -627,13 +1169,13 @@ public class GameEngine {
                 player.changeArmour(-5);
             }
             //dialog box
-            gui.combatDialog("Your armout was hit!");
+            view.combatDialog("Your armout was hit!");
             //regular health
         } else {
             //player is hit for monster's damage
-            player.changeHealth(-m.getDamage());
+            player.changeHealth(-monsters.getDamage(m));
             //combat dialog
-            gui.combatDialog("You took " + String.valueOf(m.getDamage()) + " damage");
+            view.combatDialog("You took " + String.valueOf(monsters.getDamage(m)) + " damage");
         }
     }
 
@@ -643,161 +1185,636 @@ public class GameEngine {
      */
     private void openChest() {
         //1 in 6 chance of items
-        int chestItem = (rng.nextInt(6) + 1);
+        int chestItem = (lootRng.nextInt(6) + 1);
         //switch //case
         switch (chestItem) {
             //if 1
             case 1: //heals all health
                 player.changeHealth(player.getMaxHealth() - player.getHealth());
                 //dialog box
-                gui.chestDialog("Greater Healing Potion");
+                view.chestDialog("Greater Healing Potion");
                 break;
             case 2: //deal more damage
                 player.changeDamage(player.getDamage() + 5);
                 //dialog box
-                gui.chestDialog("Sword Upgrade");
+                view.chestDialog("Sword Upgrade");
                 break;
             case 3:  //armour
                 player.changeArmour(player.getArmour() + 5);
                 //dialog box
-                gui.chestDialog("Armour");
+                view.chestDialog("Armour");
                 break;
             case 4: //deal even more damage
                 player.changeDamage(player.getDamage() + 5);
                 //dialog box
-                gui.chestDialog("Greater Sword Upgrade");
+                view.chestDialog("Greater Sword Upgrade");
                 break;
             case 5: //get even more armour
                 player.changeArmour(player.getArmour() + 10);
                 //dialog box
-                gui.chestDialog("Super Armour");
+                view.chestDialog("Super Armour");
                 break;
             case 6: // heal some health
                 player.changeHealth(20);
                 //dialog box
-                gui.chestDialog("Health Potion");
+                view.chestDialog("Health Potion");
                 break;
             //if number gen is broken
             default:
-                gui.chestDialog("Nothing");
+                view.chestDialog("Nothing");
                 break;
         }
     }
 
     /**
-     * Processes the monsters array to find any Entity in the array with 0 or
-     * less health. Any Entity in the array with 0 or less health should be set
-     * to null; when drawing or moving monsters the null elements in the
-     * monsters array are skipped.
+     * Checks the monsters hit by the player for any with 0 or less health and
+     * removes them. Removing a monster moves the last monster into its slot,
+     * so the hit slots are checked from the highest down, and a monster that
+     * is moved has always been checked already or was never hit. The moved
+     * monster's id in the occupancy grid is updated to its new slot. Slots
+     * from a level that has since been left are harmless, as only monsters
+     * with no health are removed.
      */
     private void cleanDeadMonsters() {
-        //loop monsters
-        for (int i = 0; i < monsters.length; i++) {
-            //if monster exists
-            if (monsters[i] == null) {
-            } else {
-                //is monster is dead
-                if (monsters[i].getHealth() < 1) {
-                    if (depth == 40) {
-                        //the king is dead
-                        bossDead = true;
-                        //long live the king
-                    }
-                    //monster is dead
-                    monsters[i] = null;
+        Arrays.sort(hurt, 0, hurtCount);
+        //loop the hit monsters from the end
+        for (int h = hurtCount - 1; h >= 0; h--) {
+            int i = hurt[h];
+            //is monster is dead. the same monster can be hit more than once
+            if (i < monsters.size() && (h == hurtCount - 1 || hurt[h + 1] != i)
+                    && monsters.getHealth(i) < 1) {
+                if (depth == 40) {
+                    //the king is dead
+                    bossDead = true;
+                    //long live the king
+                }
+                int x = monsters.getX(i);
+                int y = monsters.getY(i);
+                //the cell the monster died in is free again
+                if (tiles.get(x, y) == TileType.FLOOR) {
+                    spawns.add(cellIndex(x, y));
+                }
+                //clear the monster out of the occupancy grid
+                occupancy.set(x, y, OccupancyGrid.EMPTY);
+                //monster is dead
+                monsters.remove(i);
+                //the last monster now lives in this slot
+                if (i < monsters.size()) {
+                    occupancy.set(monsters.getX(i), monsters.getY(i), OccupancyGrid.monsterId(i));
                 }
-
             }
         }
+        hurtCount = 0;
     }
 
     /**
      * Called in response to the player moving into a Stair tile in the game.
-     * The method increases the dungeon depth, generates a new level by calling
-     * the generateLevel method, fills the spawns ArrayList with suitable spawn
-     * locations and spawns monsters. Finally it places the player in the new
-     * level by calling the placePlayer() method. Note that a new player object
-     * should not be created here unless the health of the player should be
-     * reset.
+     * The method stores the level being left, increases the dungeon depth,
+     * generates a new level by calling the generateLevel method, fills the
+     * spawns index with suitable spawn locations and spawns monsters. Finally
+     * it places the player in the new level by calling the placePlayer()
+     * method. If the player has been to the new depth before, the stored level
+     * is read back instead and the player arrives where they first did. Note
+     * that a new player object should not be created here unless the health
+     * of the player should be reset.
      */
     private void descendLevel() {
+        //keep the level being left so it can be visited again
+        storeLevel();
         //increase level
         depth++;
-        //create the level
-        tiles = generateLevel();
-        //find the spawn locations
-        spawns = getSpawns();
-        //create monsters
-        monsters = spawnMonsters();
-        //place the player
-        placePlayer();
+        if (levels.contains(depth)) {
+            //been here before
+            enterStoredLevel(levels.getEntryCell(depth));
+        } else {
+            //create the level
+            tiles = generateLevel();
+            //find the spawn locations
+            getSpawns();
+            //create monsters
+            monsters = spawnMonsters();
+            //place the player
+            placePlayer();
+            //record where everything is standing
+            buildOccupancy();
+        }
+        //start on the next level down
+        pregenerateNext();
         //refresh the display
-        gui.updateDisplay(tiles, player, monsters);
+        view.updateDisplay(snapshot());
+    }
+
+    /**
+     * Climbs back up to the level above, arriving on the stairs the player
+     * went down. The player can only climb from the cell they first arrived in
+     * on the current level, and not from the first level. The level being
+     * left is stored, and the level above is read back as it was left, which
+     * is also true of a loaded game. If the level above was never stored it
+     * is made again from the seed. Climbing does not play a
+     * turn, and the player only goes down again by stepping off the stairs
+     * and back onto them.
+     *
+     * @return true if the player climbed up, false if they can not climb from
+     * where they are
+     */
+    public boolean ascendLevel() {
+        if (state != GameState.PLAYING || depth == 1
+                || cellIndex(player.getX(), player.getY()) != entryCell) {
+            return false;
+        }
+        storeLevel();
+        depth--;
+        enteredStairs = false;
+        if (levels.contains(depth)) {
+            enterStoredLevel(levels.getExitCell(depth));
+        } else {
+            tiles = generateLevel();
+            getSpawns();
+            monsters = spawnMonsters();
+            placePlayer();
+            buildOccupancy();
+            //then walk the player over to the stairs, if nothing is on them
+            for (int cell = 0; cell < width * height; cell++) {
+                int x = cell % width;
+                int y = cell / width;
+                if (tiles.get(x, y) == TileType.STAIRS) {
+                    if (occupancy.get(x, y) == OccupancyGrid.EMPTY) {
+                        moveEntity(player.getStore(), player.getIndex(), x, y);
+                    }
+                    break;
+                }
+            }
+        }
+        pregenerateNext();
+        view.updateDisplay(snapshot());
+        return true;
+    }
+
+    /**
+     * Stores the current level in the level store, creating the store the
+     * first time
+     */
+    private void storeLevel() {
+        openLevels().put(depth, tiles, monsters, entryCell, cellIndex(player.getX(), player.getY()));
+    }
+
+    /**
+     * Returns the level store, creating it the first time
+     *
+     * @return the store of the levels the player has left
+     */
+    private LevelStore openLevels() {
+        if (levels == null) {
+            levels = new LevelStore(width, height, MAX_MONSTERS);
+        }
+        return levels;
+    }
+
+    /**
+     * Reads the level at the current depth back out of the level store and
+     * puts the player in it. The spawn index and occupancy grid are rebuilt
+     * from the stored tiles and monsters. Nothing moves on a level while the
+     * player is away, so its monsters count as awake until the last turn and
+     * carry on from where they were left without catching up.
+     *
+     * @param cell the packed cell to put the player in. If a monster is
+     * standing there the player is put in a random free cell instead.
+     */
+    private void enterStoredLevel(int cell) {
+        tiles = levels.getTiles(depth);
+        monsters = levels.getMonsters(depth);
+        getSpawns();
+        int x = cell % width;
+        int y = cell / width;
+        boolean free = true;
+        for (int i = 0; i < monsters.size(); i++) {
+            spawns.remove(cellIndex(monsters.getX(i), monsters.getY(i)));
+            if (monsters.getX(i) == x && monsters.getY(i) == y) {
+                free = false;
+            }
+            monsters.setAwakeTurn(i, turn - 1);
+        }
+        if (free) {
+            spawns.remove(cell);
+            player.setPosition(x, y);
+        } else {
+            placePlayer();
+        }
+        //the entry cell stays where the player first arrived
+        entryCell = levels.getEntryCell(depth);
+        buildOccupancy();
+    }
+
+    /**
+     * Empties the level store when a game starts, ends or is loaded, and
+     * cancels the level being generated for it in the background
+     */
+    private void forgetLevels() {
+        cancelPregenerated();
+        if (levels != null) {
+            levels.close();
+        }
+    }
+
+    /**
+     * Builds an immutable snapshot of the current frame to hand to the view.
+     * The view may draw it on another thread, so it must never be given the
+     * live tiles, player or monsters.
+     *
+     * @return a FrameSnapshot of the current level, what the player can see,
+     * the player and the monsters, or null if the view does not use frames
+     */
+    private FrameSnapshot snapshot() {
+        if (!view.wantsFrames()) {
+            return null;
+        }
+        //only take a new tile snapshot if the level or its tiles have changed
+        if (tileSnapshot == null || !tileSnapshot.isSameLevel(tiles)
+                || tileSnapshot.getVersion() != tiles.getVersion()) {
+            tileSnapshot = tiles.snapshot();
+        }
+        FieldOfView sightFrame = null;
+        if (player != null) {
+            updateSight();
+            if (sightSnapshot == null) {
+                sightSnapshot = sight.snapshot();
+            }
+            sightFrame = sightSnapshot;
+        }
+        return new FrameSnapshot(tileSnapshot, sightFrame, player, monsters);
+    }
+
+    /**
+     * Works out what the player can see, unless the player has not moved and
+     * no tile has changed since it was last worked out
+     */
+    private void updateSight() {
+        int cell = cellIndex(player.getX(), player.getY());
+        if (tiles == sightTiles && tiles.getVersion() == sightVersion && cell == sightCell) {
+            return;
+        }
+        sightTiles = tiles;
+        sightVersion = tiles.getVersion();
+        sightCell = cell;
+        sight.compute(tiles, player.getX(), player.getY());
+        sightSnapshot = null;
     }
 
     /**
      * Places the player in a dungeon level by choosing a spawn location from
-     * the spawns ArrayList, removing the spawn position as it is used. The
-     * method sets the players position in the level by calling its setPosition
-     * method with the x and y values of the Point taken from the spawns
-     * ArrayList.
+     * the spawns index, removing the spawn position as it is used. The method
+     * sets the players position in the level by calling its setPosition method
+     * with the x and y values of the cell taken from the spawns index. The
+     * cell becomes the entry cell of the level.
+     *
+     * @throws IllegalStateException if the level has no free cell left
      */
     private void placePlayer() {
-        //get a random number
-        int n = rng.nextInt(getSpawns().size());
-        //get the x and y of that point
-        int x = getSpawns().get(n).x;
-        int y = getSpawns().get(n).y;
-        //remove the point from the list
-        getSpawns().remove(n);
+        //take a random free cell out of the spawn index
+        int cell = takePlayerCell();
+        entryCell = cell;
+        //get the x and y of that cell
+        int x = cell % width;
+        int y = cell / width;
         //place the player
         player.setPosition(x, y);
     }
 
+    /**
+     * Takes a random free cell for the player out of the spawns index. Unlike
+     * monsters, which are just left out when a level is full, the game can
+     * not go on without the player.
+     *
+     * @return The packed cell (x + y * width) for the player
+     * @throws IllegalStateException if the level has no free cell left
+     */
+    private int takePlayerCell() {
+        int cell = spawns.takeRandom(spawnRng);
+        if (cell == -1) {
+            throw new IllegalStateException("Level " + depth + " has no free cell for the player");
+        }
+        return cell;
+    }
+
     /**
      * Performs a single turn of the game when the user presses a key on the
      * keyboard. The method cleans dead monsters, moves any monsters still alive
-     * and then checks if the player is dead, exiting the game or resetting it
-     * after an appropriate output to the user is given. It checks if the player
-     * moved into a stair tile and calls the descendLevel method if it does.
-     * Finally it requests the GUI to redraw the game level by passing it the
-     * tiles, player and monsters for the current level.
+     * and then checks if the player is dead, ending the game and telling the
+     * view so it can give an appropriate output to the user. It checks if the
+     * player moved into a stair tile since the last turn and calls the
+     * descendLevel method if it did; a player who is already standing on the
+     * stairs stays on this level. Finally it requests the GUI to redraw the
+     * game level by passing it a snapshot of the tiles, player and monsters
+     * for the current level, unless descendLevel has already sent one for the
+     * new level. Once the game is over this method does nothing.
+     *
+     * @return The state of the game after the turn
      */
-    public void doTurn() {
+    public GameState doTurn() {
+        //the game has already finished
+        if (state != GameState.PLAYING) {
+            return state;
+        }
+        //only a move made since the last turn can take the player down
+        boolean descend = enteredStairs;
+        enteredStairs = false;
         //kill any dead monsters
         cleanDeadMonsters();
         //if the boss is dead
         if (bossDead) {
-            //tell the player they have won
-            gui.messageBossDead();
-            //close the game
-            System.exit(0);
+            //the player has won, tell the view
+            state = GameState.WON;
+            forgetLevels();
+            view.gameOver(true);
         } else {
             //move the monsters
             moveMonsters();
             if (player != null) {       //checks a player object exists
                 if (player.getHealth() < 1) {
-                    System.exit(0);     //exits the game when player is dead
+                    state = GameState.LOST;     //the player is dead
+                    forgetLevels();
+                    view.gameOver(false);       //tells the view the game is over
+                    return state;
+                }
+                if (descend && tiles.get(player.getX(), player.getY()) == TileType.STAIRS) {
+                    descendLevel();     //moves to next level if the player walked onto Stairs
+                    return state;       //descendLevel has already sent the new level to the GUI
+                }
+            }
+            view.updateDisplay(snapshot());   //updates GUI
+        }
+        return state;
+    }
+
+    /**
+     * Replaces the current level with a newly generated one holding a given
+     * number of monsters, and places the player in it. This is used to set up
+     * levels of a known size for benchmarks and simulations.
+     *
+     * @param monsterCount The number of monsters to spawn in the level
+     */
+    void loadLevel(int monsterCount) {
+        tiles = generateLevel();
+        getSpawns();
+        monsters = spawnMonsters(monsterCount);
+        placePlayer();
+        buildOccupancy();
+    }
+
+    /**
+     * Returns the player, so benchmarks and simulations can look at or change
+     * the player directly
+     *
+     * @return the player Entity
+     */
+    Entity getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the monsters on the current level, so tests can check them
+     * against the occupancy grid
+     *
+     * @return the live EntityStore of monsters
+     */
+    EntityStore getMonsters() {
+        return monsters;
+    }
+
+    /**
+     * Returns the occupancy grid of the current level, so tests can check it
+     * against the player and the monsters
+     *
+     * @return the live OccupancyGrid
+     */
+    OccupancyGrid getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Returns the view this engine reports to
+     *
+     * @return the GameView passed to the constructor
+     */
+    GameView getView() {
+        return view;
+    }
+
+    /**
+     * Returns the state of this game
+     *
+     * @return GameState.PLAYING while the game is running, otherwise WON or
+     * LOST
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the seed this game was created with
+     *
+     * @return the seed every random stream in the game is derived from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the current depth of the dungeon
+     *
+     * @return the level number the player is currently on
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Saves the whole game to a file: the depth, the tiles of the current
+     * level, the player and every monster, the state of the random streams and
+     * whether the boss is dead, then every level the player has left with its
+     * tiles, its monsters and the cells the player arrived in and left from.
+     * Loading the file with load() carries on exactly where this game is now,
+     * including on the levels above. See SaveFile for the format.
+     *
+     * @param file the file to save to, which is replaced if it exists
+     * @throws IOException if the file can not be written
+     */
+    public void save(Path file) throws IOException {
+        int tileBytes = SaveFile.tileBytes(width, height);
+        //read the monsters of the levels left first, to size the buffer
+        EntityStore[] leftMonsters = new EntityStore[generators.length];
+        int leftCount = 0;
+        int leftBytes = 0;
+        for (int d = 1; levels != null && d < generators.length; d++) {
+            //the stored copy of the current level is out of date
+            if (d != depth && levels.contains(d)) {
+                leftMonsters[d] = levels.getMonsters(d);
+                leftCount++;
+                leftBytes += SAVE_LEVEL_BYTES + leftMonsters[d].size() * SaveFile.ENTITY_BYTES + tileBytes;
+            }
+        }
+        ByteBuffer out = SaveFile.allocate(SAVE_STATE_BYTES
+                + (1 + monsters.size()) * SaveFile.ENTITY_BYTES + tileBytes + 4 + leftBytes);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        out.putInt(depth);
+        out.put((byte) state.ordinal());
+        out.put((byte) (bossDead ? 1 : 0));
+        out.putLong(seed);
+        out.putLong(turn);
+        out.putLong(spawnRng.getState());
+        out.putLong(lootRng.getState());
+        out.putInt(entryCell);
+        out.putInt(monsters.size());
+        SaveFile.putEntity(out, player.getStore(), player.getIndex());
+        for (int i = 0; i < monsters.size(); i++) {
+            SaveFile.putEntity(out, monsters, i);
+        }
+        SaveFile.packTiles(tiles, out);
+        out.putInt(leftCount);
+        for (int d = 1; d < generators.length; d++) {
+            if (leftMonsters[d] != null) {
+                out.putInt(d);
+                out.putInt(levels.getEntryCell(d));
+                out.putInt(levels.getExitCell(d));
+                out.putInt(leftMonsters[d].size());
+                for (int i = 0; i < leftMonsters[d].size(); i++) {
+                    SaveFile.putEntity(out, leftMonsters[d], i);
+                }
+                SaveFile.packTiles(levels.getTiles(d), out);
+            }
+        }
+        SaveFile.write(file, out);
+    }
+
+    /**
+     * Replaces the current game with one saved by save(). The whole file is
+     * read and checked before anything is changed, so if loading fails the
+     * current game carries on as it was.
+     *
+     * @param file the file to load
+     * @throws IOException if the file can not be read, is not a save file, is
+     * damaged, or was saved from an engine with a different level size
+     */
+    public void load(Path file) throws IOException {
+        ByteBuffer in = SaveFile.read(file);
+        try {
+            int savedWidth = in.getShort();
+            int savedHeight = in.getShort();
+            if (savedWidth != width || savedHeight != height) {
+                throw new IOException(file + " is for a " + savedWidth + "x" + savedHeight
+                        + " level, not " + width + "x" + height);
+            }
+            int savedDepth = in.getInt();
+            int savedState = in.get();
+            boolean savedBossDead = in.get() != 0;
+            long savedSeed = in.getLong();
+            long savedTurn = in.getLong();
+            long spawnState = in.getLong();
+            long lootState = in.getLong();
+            int savedEntry = in.getInt();
+            int monsterCount = in.getInt();
+            if (savedDepth < 1 || savedDepth >= generators.length
+                    || savedEntry < 0 || savedEntry >= width * height
+                    || savedState < 0 || savedState >= STATES.length || monsterCount < 0
+                    || monsterCount > in.remaining() / SaveFile.ENTITY_BYTES) {
+                throw new IOException(file + " has an invalid game state");
+            }
+            EntityStore playerStore = new EntityStore(1);
+            Entity savedPlayer = playerStore.get(
+                    SaveFile.getEntity(in, playerStore, EntityType.PLAYER, width, height));
+            EntityStore savedMonsters = new EntityStore(monsterCount);
+            for (int i = 0; i < monsterCount; i++) {
+                SaveFile.getEntity(in, savedMonsters, EntityType.MONSTER, width, height);
+            }
+            TileMap savedTiles = SaveFile.unpackTiles(in, width, height);
+            //the levels the player has left, at most one per depth
+            int leftCount = in.getInt();
+            if (leftCount < 0 || leftCount >= generators.length) {
+                throw new IOException(file + " has an invalid number of levels");
+            }
+            int[] leftDepths = new int[leftCount];
+            int[] leftEntry = new int[leftCount];
+            int[] leftExit = new int[leftCount];
+            EntityStore[] leftMonsters = new EntityStore[leftCount];
+            TileMap[] leftTiles = new TileMap[leftCount];
+            boolean[] seen = new boolean[generators.length];
+            seen[savedDepth] = true;
+            for (int k = 0; k < leftCount; k++) {
+                int d = in.getInt();
+                int entry = in.getInt();
+                int exit = in.getInt();
+                int count = in.getInt();
+                if (d < 1 || d >= generators.length || seen[d] || entry < 0 || entry >= width * height
+                        || exit < 0 || exit >= width * height || count < 0
+                        || count > in.remaining() / SaveFile.ENTITY_BYTES) {
+                    throw new IOException(file + " has an invalid level");
                 }
-                if (tiles[player.getX()][player.getY()] == TileType.STAIRS) {
-                    descendLevel();     //moves to next level if the player is on Stairs
+                seen[d] = true;
+                leftDepths[k] = d;
+                leftEntry[k] = entry;
+                leftExit[k] = exit;
+                leftMonsters[k] = new EntityStore(count);
+                for (int i = 0; i < count; i++) {
+                    SaveFile.getEntity(in, leftMonsters[k], EntityType.MONSTER, width, height);
                 }
+                leftTiles[k] = SaveFile.unpackTiles(in, width, height);
+            }
+            //everything has been read, so the game can be replaced. the level
+            //being generated is for the old game
+            cancelPregenerated();
+            depth = savedDepth;
+            state = STATES[savedState];
+            bossDead = savedBossDead;
+            seed = savedSeed;
+            turn = savedTurn;
+            tiles = savedTiles;
+            player = savedPlayer;
+            monsters = savedMonsters;
+            entryCell = savedEntry;
+            enteredStairs = false;
+            //the levels the player has left replace those of the old game
+            forgetLevels();
+            for (int k = 0; k < leftCount; k++) {
+                openLevels().put(leftDepths[k], leftTiles[k], leftMonsters[k], leftEntry[k], leftExit[k]);
+            }
+            //the free cells are the floors nothing is standing on
+            getSpawns();
+            spawns.remove(cellIndex(player.getX(), player.getY()));
+            for (int i = 0; i < monsters.size(); i++) {
+                spawns.remove(cellIndex(monsters.getX(i), monsters.getY(i)));
             }
-            gui.updateDisplay(tiles, player, monsters);   //updates GUI
+            buildOccupancy();
+            //getSpawns() restarts the spawn stream, so the saved states go last
+            spawnRng.setState(spawnState);
+            lootRng.setState(lootState);
+        } catch (BufferUnderflowException e) {
+            throw SaveFile.truncated(file, e);
         }
+        pregenerateNext();
+        view.updateDisplay(snapshot());
     }
 
     /**
      * Starts a game. This method generates a level, finds spawn positions in
      * the level, spawns monsters and the player and then requests the GUI to
      * update the level on screen using the information on tiles, player and
-     * monsters.
+     * monsters. Calling this again restarts the game from the first level.
      */
     public void startGame() {
+        forgetLevels();
+        depth = 1;
+        turn = 0;
+        lootRng.setState(RandomStream.derive(seed, LOOT_STREAM, 0));
+        bossDead = false;
+        enteredStairs = false;
+        state = GameState.PLAYING;
         tiles = generateLevel();
-        spawns = getSpawns();
+        getSpawns();
         monsters = spawnMonsters();
         player = spawnPlayer();
-        gui.updateDisplay(tiles, player, monsters);
+        buildOccupancy();
+        pregenerateNext();
+        view.updateDisplay(snapshot());
     }
 }
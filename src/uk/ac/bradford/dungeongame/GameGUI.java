@@ -1,21 +1,9 @@
 package uk.ac.bradford.dungeongame;
 
-import java.awt.Color;
-import java.awt.FlowLayout;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.geom.Rectangle2D;
-import java.awt.image.*;
-import java.io.File;
-import java.io.IOException;
-import javax.imageio.ImageIO;
-import javax.swing.JDialog;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JFrame;
-import javax.swing.JLabel;
 import javax.swing.JOptionPane;
-import javax.swing.JPanel;
-import uk.ac.bradford.dungeongame.GameEngine.TileType;
+import javax.swing.SwingUtilities;
 
 /**
  * The GameGUI class is responsible for rendering graphics to the screen to
@@ -24,7 +12,7 @@ import uk.ac.bradford.dungeongame.GameEngine.TileType;
  *
  * @author prtrundl
  */
-public class GameGUI extends JFrame {
+public class GameGUI extends JFrame implements GameView {
 
     /**
      * The three final int attributes below set the size of some graphical
@@ -36,16 +24,19 @@ public class GameGUI extends JFrame {
     public static final int TILE_HEIGHT = 32;
     public static final int HEALTH_BAR_HEIGHT = 3;
 
-    private GameGUI getMe() {
-        return this;
-    }
-
     /**
      * The canvas is the area that graphics are drawn to. It is an internal
      * class of the GameGUI class.
      */
     Canvas canvas;
 
+    /**
+     * The latest frame sent from the engine thread that has not been shown
+     * yet. It is null when there is no frame waiting, so a task to show it is
+     * only put on the Swing event thread when it goes from null to a frame.
+     */
+    private final AtomicReference<FrameSnapshot> nextFrame = new AtomicReference<>();
+
     /**
      * Constructor for the GameGUI class. It calls the initGUI method to
      * generate the required objects for display.
@@ -65,273 +56,115 @@ public class GameGUI extends JFrame {
     }
 
     /**
-     * This creates a JDialog and displays what the player opened in the chest
+     * Shows what the player opened in the chest as a message on top of the
+     * game
      *
      * @param s String that is passed through to show the contents of the chest
      */
+    @Override
     public void chestDialog(String s) {
-        //get the gui as a gui object
-        GameGUI g = this;
-        //create new thread
-        Thread temp = new Thread(new Runnable() {
-            public void run() {
-                //new text box
-                JPanel pan = new JPanel();
-                pan.setLayout(new FlowLayout());
-                pan.add(new JLabel(s));
-                //new dialog
-                JDialog j = new JDialog(g, "New Item", false);
-                j.setLocation(new Point(1090, 240));
-                j.setSize(160, 74);
-                j.add(pan);
-                j.setVisible(true);
-                //prioritse the main game
-                g.toFront();
-                //pause the thread
-                try {
-                    Thread.sleep(1500);
-                } catch (Exception e) {
-                }
-                //destroy the dialog
-                j.dispose();
-            }
-        });
-        //run the thread
-        temp.start();
+        postMessage("New Item: " + s, Canvas.CHEST_MESSAGE_MILLIS, true);
     }
 
     /**
-     * This creates a JDialog whenever the hit player/monsters procedure is run
+     * Shows a message on top of the game whenever the player or a monster is
+     * hit
      *
      * @param s is the string passed into the procedure by the call which
-     * displays the text in the jpanel
+     * displays the text in the message
      */
+    @Override
     public void combatDialog(String s) {
-        //get gameGui
-        GameGUI g = this;
-        //create a new thread
-        Thread temp = new Thread(new Runnable() {
-            public void run() {
-                //create a text box
-                JPanel pan = new JPanel();
-                pan.setLayout(new FlowLayout());
-                pan.add(new JLabel(s));
-                //create the dialog box
-                JDialog j = new JDialog(g, "Hit!", false);
-                //set location
-                j.setLocation(new Point(540, 240));
-                //set the size
-                j.setSize(160, 74);
-                //add the panel to the dialog
-                j.add(pan);
-                //make it show
-                j.setVisible(true);
-                //set the focus to the main game
-                g.toFront();
-                //sleep the thread
-                try {
-                    Thread.sleep(500);
-                } catch (Exception e) {
-                }
-                //destroy the dialog box
-                j.dispose();
-            }
-        });
-        //start the thread
-        temp.start();
+        postMessage(s, Canvas.COMBAT_MESSAGE_MILLIS, false);
     }
 
     /**
-     * This displays a message when the boss is dead and doing anything ends the
-     * game
+     * Shows a message on top of the game when saving or loading fails, or a
+     * command could not be played
      *
+     * @param s the message describing what went wrong
      */
-    public void messageBossDead() {
-        JOptionPane.showMessageDialog(rootPane, "You beat the game!");
-    }
-
-    /**
-     * Method to create and initialise components for displaying elements of the
-     * game on the screen.
-     */
-    private void initGUI() {
-        add(canvas = new Canvas());     //adds canvas to this frame
-        setTitle("Dungeon");
-        setSize(816, 615);
-        setLocationRelativeTo(null);        //sets position of frame on screen
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    @Override
+    public void errorDialog(String s) {
+        postMessage(s, Canvas.ERROR_MESSAGE_MILLIS, false);
     }
 
     /**
-     * Method to update the graphical elements on the screen, usually after
-     * player and/or monsters have moved when a keyboard event was handled. The
-     * method requires three arguments and displays corresponding information on
-     * the screen.
+     * Passes a message to the canvas to be shown, moving onto the Swing event
+     * thread first if this is called from somewhere else
      *
-     * @param tiles A 2-dimensional array of TileTypes. This is the tiles of the
-     * current dungeon level that should be drawn to the screen.
-     * @param player An Entity object with the type EntityType.PLAYER. This
-     * object is used to draw the player in the right dungeon tile and display
-     * its health. null can be passed for this argument, in which case no player
-     * will be drawn.
-     * @param monsters An array of EntityType.MONSTER objects that is processed
-     * to draw monsters in tiles with a health bar. null can be passed for this
-     * argument in which case no monsters will be drawn. Elements in the
-     * monsters array can also be null, in which case nothing will be drawn.
+     * @param s the message to show
+     * @param millis how long to show it for
+     * @param item true for a chest message, false for a combat or error message
      */
-    public void updateDisplay(TileType[][] tiles, Entity player, Entity[] monsters) {
-        canvas.update(tiles, player, monsters);
-    }
-
-}
-
-/**
- * Internal class used to draw elements within a JPanel. The Canvas class loads
- * images from an asset folder inside the main project folder.
- *
- * @author prtrundl
- */
-class Canvas extends JPanel {
-
-    private BufferedImage floor;
-    private BufferedImage wall;
-    private BufferedImage player;
-    private BufferedImage monster;
-    private BufferedImage stairs;
-    private BufferedImage chest;
-
-    TileType[][] currentTiles;  //the current 2D array of tiles to display
-    Entity currentPlayer;       //the current player object to be drawn
-    Entity[] currentMonsters;   //the current array of monsters to draw
-
-    /**
-     * Constructor that loads tile images for use in this class
-     */
-    public Canvas() {
-        loadTileImages();
-    }
-
-    /**
-     * Loads tiles images from a fixed folder location within the project
-     * directory
-     */
-    private void loadTileImages() {
-        try {
-            floor = ImageIO.read(new File("assets/floor.png"));
-            assert floor.getHeight() == GameGUI.TILE_HEIGHT
-                    && floor.getWidth() == GameGUI.TILE_WIDTH;
-            wall = ImageIO.read(new File("assets/wall.png"));
-            assert wall.getHeight() == GameGUI.TILE_HEIGHT
-                    && wall.getWidth() == GameGUI.TILE_WIDTH;
-            player = ImageIO.read(new File("assets/player.png"));
-            assert player.getHeight() == GameGUI.TILE_HEIGHT
-                    && player.getWidth() == GameGUI.TILE_WIDTH;
-            monster = ImageIO.read(new File("assets/monster.png"));
-            assert monster.getHeight() == GameGUI.TILE_HEIGHT
-                    && monster.getWidth() == GameGUI.TILE_WIDTH;
-            stairs = ImageIO.read(new File("assets/stairs.png"));
-            assert stairs.getHeight() == GameGUI.TILE_HEIGHT
-                    && stairs.getWidth() == GameGUI.TILE_WIDTH;
-            chest = ImageIO.read(new File("assets/chest.png")); //commented out for future implementation
-            assert chest.getHeight() == GameGUI.TILE_HEIGHT
-                    && chest.getWidth() == GameGUI.TILE_WIDTH;
-
-        } catch (IOException e) {
-            System.out.println("Exception loading images: " + e.getMessage());
-            e.printStackTrace(System.out);
+    private void postMessage(String s, int millis, boolean item) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            canvas.showMessage(s, millis, item);
+        } else {
+            SwingUtilities.invokeLater(() -> canvas.showMessage(s, millis, item));
         }
     }
 
     /**
-     * Updates the current graphics on the screen to display the tiles, player
-     * and monsters
+     * This displays a message when the boss is dead and doing anything ends the
+     * game
      *
-     * @param t The 2D array of TileTypes representing the current level of the
-     * dungeon
-     * @param player The current player object, used to draw the player and its
-     * health
-     * @param mon The array of monsters to display them and their health
      */
-    public void update(TileType[][] t, Entity player, Entity[] mon) {
-        currentTiles = t;
-        currentPlayer = player;
-        currentMonsters = mon;
-        repaint();
+    public void messageBossDead() {
+        JOptionPane.showMessageDialog(rootPane, "You beat the game!");
     }
 
     /**
-     * Override of method in super class, it draws the custom elements for this
-     * game such as the tiles, player and monsters.
+     * Called by the engine when the game ends. Shows the victory message if
+     * the boss was killed and then closes this window. Only the window is
+     * closed, so other games running in the same program carry on. This can be
+     * called from the engine thread, so the work is done on the Swing event
+     * thread.
      *
-     * @param g
+     * @param playerWon true if the boss was killed, false if the player died
      */
     @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        drawDungeon(g);
+    public void gameOver(boolean playerWon) {
+        SwingUtilities.invokeLater(() -> {
+            if (playerWon) {
+                messageBossDead();
+            }
+            dispose();
+        });
     }
 
     /**
-     * Draws graphical elements to the screen to display the current dungeon
-     * level tiles, the player and the monsters. If the tiles, player or monster
-     * objects are null they will not be drawn.
-     *
-     * @param g
+     * Method to create and initialise components for displaying elements of the
+     * game on the screen.
      */
-    private void drawDungeon(Graphics g) {
-        Graphics2D g2 = (Graphics2D) g;
-        if (currentTiles != null) {
-            for (int i = 0; i < currentTiles.length; i++) {
-                for (int j = 0; j < currentTiles[i].length; j++) {
-                    if (currentTiles[i][j] != null) {   //checks a tile exists
-                        switch (currentTiles[i][j]) {
-                            case FLOOR:
-                                g2.drawImage(floor, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case WALL:
-                                g2.drawImage(wall, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case STAIRS:
-                                g2.drawImage(stairs, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case CHEST:
-                                g2.drawImage(chest, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_WIDTH, null);
-                        }
-                    }
-                }
-            }
-        }
-        if (currentMonsters != null) {
-            for (Entity mon : currentMonsters) {
-                if (mon != null) {
-                    g2.drawImage(monster, mon.getX() * GameGUI.TILE_WIDTH, mon.getY() * GameGUI.TILE_HEIGHT, null);
-                    drawHealthBar(g2, mon);
-                }
-            }
-        }
-        if (currentPlayer != null) {
-            g2.drawImage(player, currentPlayer.getX() * GameGUI.TILE_WIDTH, currentPlayer.getY() * GameGUI.TILE_HEIGHT, null);
-            drawHealthBar(g2, currentPlayer);
-        }
+    private void initGUI() {
+        add(canvas = new Canvas());     //adds canvas to this frame
+        setTitle("Dungeon");
+        setSize(816, 615);
+        setLocationRelativeTo(null);        //sets position of frame on screen
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     }
 
     /**
-     * Draws a health bar for the given entity at the bottom of the tile that
-     * the entity is located in.
+     * Method to update the graphical elements on the screen, usually after
+     * player and/or monsters have moved when a keyboard event was handled.
      *
-     * @param g2 The graphics object to use for drawing
-     * @param e The entity that the health bar will be drawn for
+     * @param frame A FrameSnapshot holding the tiles of the current dungeon
+     * level, the player and its health, and the monsters and their health.
+     * The snapshot never changes, so it can be drawn while the engine carries
+     * on with the next turn.
      */
-    private void drawHealthBar(Graphics2D g2, Entity e) {
-        double remainingHealth = (double) e.getHealth() / (double) e.getMaxHealth();
-        g2.setColor(Color.RED);
-        g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH, GameGUI.HEALTH_BAR_HEIGHT));
-        g2.setColor(Color.GREEN);
-        int armour = e.getArmour();
-        if (armour > 0) {
-            g2.setColor(Color.GRAY);
+    @Override
+    public void updateDisplay(FrameSnapshot frame) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            canvas.update(frame);
+            return;
+        }
+        //called from the engine thread, so hand the frame to the event thread.
+        //only one frame is ever waiting, a newer one replaces it.
+        if (nextFrame.getAndSet(frame) == null) {
+            SwingUtilities.invokeLater(() -> canvas.update(nextFrame.getAndSet(null)));
         }
-        g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH * remainingHealth, GameGUI.HEALTH_BAR_HEIGHT));
-
     }
+
 }
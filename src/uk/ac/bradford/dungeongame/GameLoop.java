@@ -0,0 +1,218 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Supplier;
+
+/**
+ * The GameLoop class runs a GameEngine on its own thread. Key presses are
+ * turned into commands and put on a small bounded queue by the input handler,
+ * and the engine thread takes them off one at a time and plays a turn for
+ * each. This keeps the Swing event thread free to repaint and take more input
+ * however long a turn takes, for example when a new level is generated. The
+ * engine thread is the only thread that calls the engine once the loop has
+ * started. The engine can also be created on the engine thread, so generating
+ * the first level does not hold up the window either.
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * The commands that can be sent to the engine. The moves each play one
+     * turn and WAIT plays a turn without moving the player. CLIMB goes back
+     * up to the level above, and SAVE and LOAD save the game to the save file
+     * or load it back, none of which play a turn.
+     */
+    public enum Command {
+        LEFT, RIGHT, UP, DOWN, WAIT, CLIMB, SAVE, LOAD
+    }
+
+    /**
+     * The file games are saved to when no other file is given
+     */
+    public static final String SAVE_FILE = "dungeon.sav";
+
+    /**
+     * The most commands that can be waiting at once. Key presses made while
+     * the queue is full are dropped.
+     */
+    public static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * Creates the engine that commands are passed to, on the engine thread
+     */
+    private final Supplier<GameEngine> factory;
+
+    /**
+     * The engine that commands are passed to, or null until the engine thread
+     * has created it
+     */
+    private GameEngine engine;
+
+    /**
+     * The file the SAVE and LOAD commands use
+     */
+    private final Path saveFile;
+
+    /**
+     * Commands waiting to be played, oldest first
+     */
+    private final LinkedBlockingDeque<Command> queue = new LinkedBlockingDeque<>(QUEUE_CAPACITY);
+
+    /**
+     * The thread running the engine, or null before start() is called
+     */
+    private Thread thread;
+
+    /**
+     * Creates a GameLoop for an engine. The loop does nothing until start()
+     * is called. Games are saved to SAVE_FILE in the working directory.
+     *
+     * @param engine the engine to run
+     */
+    public GameLoop(GameEngine engine) {
+        this(engine, Paths.get(SAVE_FILE));
+    }
+
+    /**
+     * Creates a GameLoop for an engine that saves games to a given file. The
+     * loop does nothing until start() is called.
+     *
+     * @param engine the engine to run
+     * @param saveFile the file the SAVE and LOAD commands use
+     */
+    public GameLoop(GameEngine engine, Path saveFile) {
+        this(() -> engine, saveFile);
+    }
+
+    /**
+     * Creates a GameLoop that creates its engine on the engine thread once
+     * start() is called. Games are saved to SAVE_FILE in the working
+     * directory.
+     *
+     * @param factory creates the engine to run, which starts the game
+     */
+    public GameLoop(Supplier<GameEngine> factory) {
+        this(factory, Paths.get(SAVE_FILE));
+    }
+
+    /**
+     * Creates a GameLoop that creates its engine on the engine thread once
+     * start() is called, and saves games to a given file
+     *
+     * @param factory creates the engine to run, which starts the game
+     * @param saveFile the file the SAVE and LOAD commands use
+     */
+    public GameLoop(Supplier<GameEngine> factory, Path saveFile) {
+        this.factory = factory;
+        this.saveFile = saveFile;
+    }
+
+    /**
+     * Starts the engine thread. It is a daemon thread so it does not keep the
+     * program running once the window is closed.
+     */
+    public void start() {
+        thread = new Thread(this, "game-engine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the engine thread after the turn it is playing, if any
+     */
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Adds a command to the queue without waiting. Repeated key presses are
+     * coalesced, so a command the same as the last one still waiting is
+     * dropped, and commands are also dropped when the queue is full. This
+     * stops a held down key from building up a backlog of moves while the
+     * engine is busy.
+     *
+     * @param c the command to add
+     * @return true if the command was queued, false if it was dropped
+     */
+    public boolean submit(Command c) {
+        if (queue.peekLast() == c) {
+            return false;
+        }
+        return queue.offerLast(c);
+    }
+
+    /**
+     * The body of the engine thread. Creates the engine if it has not been
+     * created yet, then takes commands off the queue and plays a turn for
+     * each one until the game ends or the loop is stopped. Commands sent
+     * while the engine is being created wait on the queue.
+     */
+    @Override
+    public void run() {
+        try {
+            engine = factory.get();
+        } catch (RuntimeException e) {
+            //there is no engine, and so no view, to report it to
+            System.err.println("Could not start the game: " + e);
+            return;
+        }
+        try {
+            while (engine.getState() == GameEngine.GameState.PLAYING) {
+                process(queue.takeFirst());
+            }
+        } catch (InterruptedException e) {
+            //stop() was called
+        }
+    }
+
+    /**
+     * Plays a command, reporting anything that goes wrong to the engine's
+     * view. A command that fails is only reported, and the loop carries on
+     * with the next one, so the window never stops responding to keys.
+     *
+     * @param c the command to play
+     */
+    private void process(Command c) {
+        try {
+            play(c);
+        } catch (IOException e) {
+            //the save file could not be written or read, the game carries on
+            engine.getView().errorDialog("Could not " + (c == Command.SAVE ? "save" : "load")
+                    + " the game: " + e.getMessage());
+        } catch (RuntimeException e) {
+            //a bug in the engine. keep the details for whoever reports it
+            e.printStackTrace();
+            engine.getView().errorDialog("Something went wrong: " + e);
+        }
+    }
+
+    /**
+     * Plays a single turn for a command, or climbs, saves or loads the game
+     *
+     * @param c the command to play
+     * @throws IOException if the game can not be saved or loaded
+     */
+    private void play(Command c) throws IOException {
+        switch (c) {
+            case CLIMB:
+                engine.ascendLevel();
+                return;
+            case SAVE:
+                engine.save(saveFile);
+                return;
+            case LOAD:
+                engine.load(saveFile);
+                return;
+            case LEFT: engine.movePlayerLeft(); break;
+            case RIGHT: engine.movePlayerRight(); break;
+            case UP: engine.movePlayerUp(); break;
+            case DOWN: engine.movePlayerDown(); break;
+            default: ;
+        }
+        engine.doTurn();
+    }
+}
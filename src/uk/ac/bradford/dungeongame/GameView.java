@@ -0,0 +1,65 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The GameView interface is everything the GameEngine needs from whatever is
+ * showing the game. The engine passes level and entity information to a
+ * GameView to be drawn and tells it about events such as combat, chests and
+ * the end of the game. GameGUI is the Swing implementation; HeadlessView
+ * ignores drawing so the engine can be run without a window.
+ */
+public interface GameView {
+
+    /**
+     * Called after the player and monsters have moved so the current state of
+     * the level can be shown. The frame is immutable, so the view can keep it
+     * and draw it later on another thread while the engine carries on.
+     *
+     * @param frame A FrameSnapshot of the level, player and monsters, or null
+     * if wantsFrames() returns false
+     */
+    void updateDisplay(FrameSnapshot frame);
+
+    /**
+     * Whether this view looks at the frames passed to updateDisplay. Building
+     * a snapshot copies the player and monsters, so a view that never reads
+     * them can return false and is passed null instead.
+     *
+     * @return true if updateDisplay needs a FrameSnapshot
+     */
+    default boolean wantsFrames() {
+        return true;
+    }
+
+    /**
+     * Called when the player or a monster is hit
+     *
+     * @param s A message describing the hit
+     */
+    void combatDialog(String s);
+
+    /**
+     * Called when the player opens a chest
+     *
+     * @param s The name of the item found in the chest
+     */
+    void chestDialog(String s);
+
+    /**
+     * Called when something the player asked for could not be done, such as
+     * saving or loading the game. Views that show messages should override
+     * this; by default the message is written to System.err.
+     *
+     * @param s A message describing what went wrong
+     */
+    default void errorDialog(String s) {
+        System.err.println(s);
+    }
+
+    /**
+     * Called once when the game ends, either because the boss was killed or
+     * because the player died.
+     *
+     * @param playerWon true if the boss was killed, false if the player died
+     */
+    void gameOver(boolean playerWon);
+}
@@ -0,0 +1,69 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class is an entry point that runs games without a GUI. Each game gets
+ * its own engine connected to a HeadlessView, and the games are played side
+ * by side on a thread pool with random arrow key presses until they end or a
+ * turn limit is reached. It then reports how many games were played per
+ * second. The number of games can be passed as the first argument.
+ */
+public class HeadlessLauncher {
+
+    /**
+     * The most turns a single game is allowed to run for
+     */
+    public static final int MAX_TURNS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<Integer>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            results.add(pool.submit(HeadlessLauncher::playGame));
+        }
+        int finished = 0;
+        long turns = 0;
+        for (Future<Integer> f : results) {
+            int turn = f.get();
+            if (turn < MAX_TURNS) {
+                finished++;
+            }
+            turns += turn;
+        }
+        pool.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games (%d finished), %d turns in %.2fs: %.0f games/s%n",
+                games, finished, turns, seconds, games / seconds);
+    }
+
+    /**
+     * Plays a single game with random arrow key presses
+     *
+     * @return the number of turns the game lasted
+     */
+    private static int playGame() {
+        ThreadLocalRandom keys = ThreadLocalRandom.current();
+        GameEngine eng = new GameEngine(new HeadlessView());    //create engine, this starts the game
+        int turn = 0;
+        while (eng.getState() == GameEngine.GameState.PLAYING && turn < MAX_TURNS) {
+            //press a random arrow key
+            switch (keys.nextInt(4)) {
+                case 0: eng.movePlayerLeft(); break;
+                case 1: eng.movePlayerRight(); break;
+                case 2: eng.movePlayerUp(); break;
+                default: eng.movePlayerDown();
+            }
+            eng.doTurn();
+            turn++;
+        }
+        return turn;
+    }
+}
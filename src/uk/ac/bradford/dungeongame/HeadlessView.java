@@ -0,0 +1,107 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * A GameView that draws nothing and creates no windows. It counts the events
+ * it is sent so that games run without a GUI can still be checked, and it
+ * records how the game ended.
+ */
+public class HeadlessView implements GameView {
+
+    /**
+     * The number of times the display was updated
+     */
+    private int frames;
+
+    /**
+     * The number of combat events seen
+     */
+    private int hits;
+
+    /**
+     * The number of chests opened
+     */
+    private int chests;
+
+    /**
+     * Whether the game has ended, and if so whether the player won
+     */
+    private boolean gameOver;
+    private boolean playerWon;
+
+    @Override
+    public void updateDisplay(FrameSnapshot frame) {
+        frames++;
+    }
+
+    /**
+     * A HeadlessView only counts frames, so no snapshots are built for it.
+     * Subclasses that read the frames should override this to return true.
+     *
+     * @return false
+     */
+    @Override
+    public boolean wantsFrames() {
+        return false;
+    }
+
+    @Override
+    public void combatDialog(String s) {
+        hits++;
+    }
+
+    @Override
+    public void chestDialog(String s) {
+        chests++;
+    }
+
+    @Override
+    public void gameOver(boolean playerWon) {
+        gameOver = true;
+        this.playerWon = playerWon;
+    }
+
+    /**
+     * Returns the number of times the display was updated
+     *
+     * @return the number of calls to updateDisplay
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of combat events
+     *
+     * @return the number of calls to combatDialog
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of chests opened
+     *
+     * @return the number of calls to chestDialog
+     */
+    public int getChests() {
+        return chests;
+    }
+
+    /**
+     * Returns whether the game has ended
+     *
+     * @return true once gameOver has been called
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Returns whether the player won the game
+     *
+     * @return true if the game ended with the boss dead
+     */
+    public boolean hasPlayerWon() {
+        return playerWon;
+    }
+}
@@ -1,31 +1,45 @@
 package uk.ac.bradford.dungeongame;
 
 import java.awt.EventQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class is the entry point for the project, containing the main method that
  * starts a game. It creates instances of the different classes of this project
- * and connects them appropriately.
+ * and connects them appropriately. The width and height of the dungeon in tiles
+ * can be passed as two arguments.
  * @author prtrundl
  */
 public class Launcher {
     
     public static void main(String[] args) {
+        int width = args.length >= 2 ? Integer.parseInt(args[0]) : GameEngine.DUNGEON_WIDTH;
+        int height = args.length >= 2 ? Integer.parseInt(args[1]) : GameEngine.DUNGEON_HEIGHT;
         EventQueue.invokeLater(new Runnable() {
         
             /**
-             * The run method starts the game in a separate thread. It creates
-             * the GUI, the engine and the input handler classes and connects
-             * those that call other objects.
+             * The run method creates the GUI and the input handler and
+             * connects them to a GameLoop. The engine is created by the loop
+             * on its own thread, so the first level is not generated on the
+             * Swing event thread.
              */
             @Override
             public void run() {
                 GameGUI gui = new GameGUI();            //create GUI
                 gui.setVisible(true);                   //display GUI
-                GameEngine eng = new GameEngine(gui);   //create engine
-                DungeonInputHandler i = new DungeonInputHandler(eng);   //create input handler
+                long seed = new Random().nextLong();
+                //a daemon thread that generates the next level while this one is played
+                ExecutorService pregenerator = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "level-pregen");
+                    t.setDaemon(true);
+                    return t;
+                });
+                GameLoop loop = new GameLoop(() -> new GameEngine(gui, seed, width, height, pregenerator));   //creates the engine on its own thread
+                DungeonInputHandler i = new DungeonInputHandler(loop);  //create input handler
                 gui.registerKeyHandler(i);              //registers handler with GUI
-                eng.startGame();                        //starts the game
+                loop.start();                           //creates the engine, which starts the game, then takes commands
             }
         });
     }
@@ -0,0 +1,44 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The LevelGenerator interface is an algorithm for laying out the walls and
+ * open cells of a dungeon level. The GameEngine chooses a generator for each
+ * range of depths, asks it to carve the layout into a byte array, and then
+ * does the rest itself: it keeps only the largest connected area open and
+ * places the stairs and chests, so every generator gets a level that can be
+ * finished.
+ *
+ * A generator must only use the random stream it is given, so the layout
+ * depends on nothing but the seed of the game and the depth. Generators may
+ * keep working arrays between calls to avoid creating them for every level,
+ * so a generator must not be shared between engines that generate levels at
+ * the same time.
+ */
+public interface LevelGenerator {
+
+    /**
+     * The values carved into the cells array
+     */
+    byte WALL = 0;
+    byte OPEN = 1;
+
+    /**
+     * Carves the layout of a level. On entry every cell is WALL. Cells are
+     * packed as x + y * width. The outer border is made a wall by the engine
+     * afterwards, so a generator does not have to avoid it.
+     *
+     * @param cells an array of at least width * height cells to set to WALL
+     * or OPEN
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     * @param rng the random stream for this level
+     */
+    void carve(byte[] cells, int width, int height, RandomStream rng);
+
+    /**
+     * Returns a short name for the algorithm, used by the benchmarks
+     *
+     * @return the name of the generator
+     */
+    String getName();
+}
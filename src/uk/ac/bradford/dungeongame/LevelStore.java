@@ -0,0 +1,341 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+
+/**
+ * The LevelStore class keeps the levels of a game that the player is not on,
+ * so they can be visited again exactly as they were left. Levels are kept in
+ * a temporary file that is memory-mapped, not on the heap, so a game can hold
+ * every level of the dungeon (or thousands of levels on big maps) for almost
+ * no heap at all, and the operating system pages them in and out as needed.
+ *
+ * Every level has a record of the same size, so the record for a depth is
+ * found by multiplying rather than searching. A record is a header (whether
+ * it is in use, the cell the player first arrived in, the cell the player
+ * left from and the number of monsters), a table of monsterCapacity entity
+ * records in the format of SaveFile.putEntity(), then the tiles packed two
+ * bits each. The file is mapped in segments of whole records, which are only
+ * mapped when a depth in them is first stored.
+ *
+ * If a level has more monsters than the records have room for, the store is
+ * copied into a new file with bigger records. Closing a store marks every
+ * record unused and keeps the file, still mapped, for the next level stored,
+ * as creating and mapping a file costs more than a short game. A file is
+ * never truncated while it is mapped, and each store keeps its own file, so
+ * an engine reuses its file from game to game without sharing it. The files
+ * are deleted when the program exits. Methods throw UncheckedIOException if
+ * a file can not be created or mapped.
+ */
+public class LevelStore implements Closeable {
+
+    /**
+     * The most bytes mapped in one segment. Segments hold at least one record.
+     */
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    /**
+     * The size of the header of each record: in use, entry cell, exit cell
+     * and number of monsters, all as ints
+     */
+    private static final int RECORD_HEADER_BYTES = 16;
+
+    /**
+     * The size of the levels in the store
+     */
+    private final int width;
+    private final int height;
+
+    /**
+     * The number of monsters each record has room for, and the size of each
+     * record in bytes
+     */
+    private int monsterCapacity;
+    private int recordBytes;
+
+    /**
+     * The number of records in each mapped segment
+     */
+    private int segmentRecords;
+
+    /**
+     * The file holding the records, or null until the first level is stored
+     */
+    private FileChannel channel;
+
+    /**
+     * The mapped segments of the file, indexed by (depth - 1) / segmentRecords.
+     * A null segment has not been mapped yet and holds no levels.
+     */
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Creates an empty LevelStore. No file is created until the first level
+     * is stored.
+     *
+     * @param width the width of the levels in tiles
+     * @param height the height of the levels in tiles
+     * @param monsterCapacity the number of monsters each record has room for
+     * to begin with
+     */
+    public LevelStore(int width, int height, int monsterCapacity) {
+        this.width = width;
+        this.height = height;
+        setCapacity(monsterCapacity);
+    }
+
+    /**
+     * Sets the number of monsters each record has room for, and works out the
+     * sizes that depend on it
+     *
+     * @param capacity the number of monsters
+     */
+    private void setCapacity(int capacity) {
+        monsterCapacity = Math.max(capacity, 1);
+        recordBytes = RECORD_HEADER_BYTES + monsterCapacity * SaveFile.ENTITY_BYTES
+                + SaveFile.tileBytes(width, height);
+        segmentRecords = Math.max(1, SEGMENT_BYTES / recordBytes);
+    }
+
+    /**
+     * Stores a level, replacing anything already stored for its depth
+     *
+     * @param depth the depth of the level, 1 or more
+     * @param tiles the tiles of the level
+     * @param monsters the monsters on the level
+     * @param entryCell the packed cell (x + y * width) the player first
+     * arrived in on this level
+     * @param exitCell the packed cell the player left the level from
+     */
+    public void put(int depth, TileMap tiles, EntityStore monsters, int entryCell, int exitCell) {
+        if (monsters.size() > monsterCapacity) {
+            grow(Math.max(monsters.size(), monsterCapacity * 2));
+        }
+        ByteBuffer record = record(depth, true);
+        record.putInt(1);
+        record.putInt(entryCell);
+        record.putInt(exitCell);
+        record.putInt(monsters.size());
+        for (int i = 0; i < monsters.size(); i++) {
+            SaveFile.putEntity(record, monsters, i);
+        }
+        record.position(tilesOffset());
+        SaveFile.packTiles(tiles, record);
+    }
+
+    /**
+     * Checks whether a level has been stored for a depth
+     *
+     * @param depth the depth to check
+     * @return true if the level at that depth can be read back
+     */
+    public boolean contains(int depth) {
+        ByteBuffer record = record(depth, false);
+        return record != null && record.getInt(0) != 0;
+    }
+
+    /**
+     * Reads back the tiles of a stored level. They are unpacked straight out
+     * of the mapped file into a new TileMap.
+     *
+     * @param depth the depth of a stored level
+     * @return a new TileMap holding the tiles
+     */
+    public TileMap getTiles(int depth) {
+        ByteBuffer record = stored(depth);
+        record.position(tilesOffset());
+        return SaveFile.unpackTiles(record, width, height);
+    }
+
+    /**
+     * Reads back the monsters of a stored level, in the slots they were in
+     *
+     * @param depth the depth of a stored level
+     * @return a new EntityStore holding the monsters
+     */
+    public EntityStore getMonsters(int depth) {
+        ByteBuffer record = stored(depth);
+        int count = record.getInt(12);
+        EntityStore monsters = new EntityStore(count);
+        record.position(RECORD_HEADER_BYTES);
+        for (int i = 0; i < count; i++) {
+            try {
+                SaveFile.getEntity(record, monsters, EntityType.MONSTER, width, height);
+            } catch (IOException e) {
+                //only levels with monsters inside them are stored
+                throw new IllegalStateException(e);
+            }
+        }
+        return monsters;
+    }
+
+    /**
+     * Returns the cell the player first arrived in on a stored level
+     *
+     * @param depth the depth of a stored level
+     * @return the packed cell (x + y * width)
+     */
+    public int getEntryCell(int depth) {
+        return stored(depth).getInt(4);
+    }
+
+    /**
+     * Returns the cell the player left a stored level from
+     *
+     * @param depth the depth of a stored level
+     * @return the packed cell (x + y * width)
+     */
+    public int getExitCell(int depth) {
+        return stored(depth).getInt(8);
+    }
+
+    /**
+     * Forgets every stored level by marking every record unused. The file and
+     * its mapped segments are kept, in place, for the next level stored.
+     */
+    @Override
+    public void close() {
+        for (MappedByteBuffer segment : segments) {
+            for (int r = 0; segment != null && r < segmentRecords; r++) {
+                //only write to records in use, so untouched pages stay untouched
+                if (segment.getInt(r * recordBytes) != 0) {
+                    segment.putInt(r * recordBytes, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the file holding the records
+     *
+     * @throws IOException if the file can not be created
+     */
+    private void createFile() throws IOException {
+        Path path = Files.createTempFile("dungeon", ".levels");
+        path.toFile().deleteOnExit();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Returns the offset of the packed tiles inside a record
+     *
+     * @return the number of bytes before the tiles
+     */
+    private int tilesOffset() {
+        return RECORD_HEADER_BYTES + monsterCapacity * SaveFile.ENTITY_BYTES;
+    }
+
+    /**
+     * Returns the record of a depth that must have been stored
+     *
+     * @param depth the depth
+     * @return a buffer over the record
+     * @throws IllegalArgumentException if nothing is stored for the depth
+     */
+    private ByteBuffer stored(int depth) {
+        if (!contains(depth)) {
+            throw new IllegalArgumentException("No level is stored for depth " + depth);
+        }
+        return record(depth, false);
+    }
+
+    /**
+     * Returns a buffer over the record of a depth. The buffer is a view of the
+     * mapped file, so nothing is copied.
+     *
+     * @param depth the depth, 1 or more
+     * @param create whether to map the segment holding the record if it has
+     * not been mapped yet
+     * @return a buffer starting at the record and holding recordBytes bytes,
+     * or null if create is false and the segment has not been mapped
+     */
+    private ByteBuffer record(int depth, boolean create) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be 1 or more, was " + depth);
+        }
+        int s = (depth - 1) / segmentRecords;
+        if (s >= segments.length || segments[s] == null) {
+            if (!create) {
+                return null;
+            }
+            map(s);
+        }
+        return segments[s].slice((depth - 1) % segmentRecords * recordBytes, recordBytes);
+    }
+
+    /**
+     * Maps a segment of the file, creating the file first if needed. The new
+     * part of the file reads as zeros, so its records are all unused.
+     *
+     * @param s the index of the segment
+     */
+    private void map(int s) {
+        try {
+            if (channel == null) {
+                createFile();
+            }
+            if (s >= segments.length) {
+                segments = Arrays.copyOf(segments, s + 1);
+            }
+            if (segments[s] == null) {
+                long size = (long) segmentRecords * recordBytes;
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, s * size, size);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies every stored level into a new file with room for more monsters
+     * in each record
+     *
+     * @param capacity the new number of monsters each record has room for
+     */
+    private void grow(int capacity) {
+        MappedByteBuffer[] oldSegments = segments;
+        int oldRecords = segmentRecords;
+        int oldRecordBytes = recordBytes;
+        int oldTilesOffset = tilesOffset();
+        FileChannel oldChannel = channel;
+        channel = null;
+        segments = new MappedByteBuffer[0];
+        setCapacity(capacity);
+        int tileBytes = SaveFile.tileBytes(width, height);
+        for (int s = 0; s < oldSegments.length; s++) {
+            if (oldSegments[s] == null) {
+                continue;
+            }
+            for (int r = 0; r < oldRecords; r++) {
+                ByteBuffer from = oldSegments[s].slice(r * oldRecordBytes, oldRecordBytes);
+                if (from.getInt(0) == 0) {
+                    continue;
+                }
+                ByteBuffer to = record(s * oldRecords + r + 1, true);
+                //the header and the monsters in use, then the tiles
+                int used = RECORD_HEADER_BYTES + from.getInt(12) * SaveFile.ENTITY_BYTES;
+                to.put(from.slice(0, used));
+                to.position(tilesOffset());
+                to.put(from.slice(oldTilesOffset, tileBytes));
+            }
+        }
+        //the old segments are unmapped once nothing refers to them
+        if (oldChannel != null) {
+            try {
+                oldChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The MonsterPhase class moves the awake monsters on a level for one turn,
+ * split across threads when there are enough of them to make it worthwhile.
+ * Sleeping monsters are not looked at, so the cost of a turn depends on the
+ * number of awake monsters and not on the number on the level.
+ *
+ * The level is cut into stripes of STRIPE_ROWS rows. Each stripe moves the
+ * monsters standing in it, in the order of the ActiveSet, and only touches
+ * cells inside the stripe, so stripes can run at the same time without
+ * locking. A monster that wants to step into a different stripe is held back,
+ * and those monsters are moved one at a time in the same order once every
+ * stripe has finished. Monsters that walk into the player only record the
+ * attack; the engine applies the hits afterwards in the same order, along
+ * with the changes to its SpawnIndex. Whether a step is allowed is decided
+ * by GameEngine.checkMove(), the same rules the player moves by, so this
+ * class only decides when each move is made.
+ *
+ * The stripes are the same whether or not threads are used, and random moves
+ * come from hashing a seed for the turn with the monster's slot rather than
+ * from a shared generator, so a seeded game plays out the same way on any
+ * number of cores.
+ */
+public class MonsterPhase {
+
+    /**
+     * Stripes are 1 << STRIPE_SHIFT rows high, the same as a TileMap chunk
+     */
+    public static final int STRIPE_SHIFT = TileMap.CHUNK_SHIFT;
+    public static final int STRIPE_ROWS = 1 << STRIPE_SHIFT;
+
+    /**
+     * The fewest monsters that are moved on more than one thread. Below this
+     * the stripes are run one after another on the calling thread.
+     */
+    public static final int PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * The X and Y steps for the four directions, indexed 0 (up), 1 (right),
+     * 2 (down) and 3 (left) as in GameEngine
+     */
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+
+    /**
+     * The width of the level, used to pack cells
+     */
+    private final int width;
+
+    /**
+     * The number of stripes in the level
+     */
+    private final int stripes;
+
+    /**
+     * Monster slots sorted by stripe, in active set order within each stripe. The
+     * monsters in stripe s are order[stripeStart[s]] up to (but not
+     * including) order[stripeStart[s + 1]].
+     */
+    private int[] order = new int[0];
+    private final int[] stripeStart;
+
+    /**
+     * The moves made this turn as packed cells (x + y * width). While the
+     * stripes run, element k holds the move of the monster at order[k], or -1
+     * if it did not move. Afterwards the moves are packed into the first
+     * moveCount elements in the order they were made.
+     */
+    private int[] moveFrom = new int[0];
+    private int[] moveTo = new int[0];
+    private int moveCount;
+
+    /**
+     * For each monster slot, whether it was held back to be moved after the
+     * stripes, and whether it attacked the player
+     */
+    private boolean[] deferred = new boolean[0];
+    private boolean[] attacked = new boolean[0];
+
+    /**
+     * What the current turn is working on
+     */
+    private TileMap tiles;
+    private OccupancyGrid occupancy;
+    private EntityStore monsters;
+    private FlowField flow;
+    private FieldOfView sight;
+    private long turnSeed;
+
+    /**
+     * Fork/join task that runs a range of stripes, splitting the range in half
+     * until it is a single stripe
+     */
+    private class StripeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        StripeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                runStripes(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new StripeTask(from, mid), new StripeTask(mid, to));
+        }
+    }
+
+    /**
+     * Creates a MonsterPhase for levels of the given size
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    public MonsterPhase(int width, int height) {
+        this.width = width;
+        stripes = (height + STRIPE_ROWS - 1) >> STRIPE_SHIFT;
+        stripeStart = new int[stripes + 1];
+    }
+
+    /**
+     * Moves every awake monster one step. Monsters that can see the player
+     * and can reach them step downhill on the flow field, and the rest move
+     * in a random direction without looking at the flow field.
+     *
+     * @param tiles the level, which is only read
+     * @param occupancy the occupancy grid, updated as monsters move
+     * @param monsters the monsters, whose positions are updated
+     * @param awake the slots of the monsters to move
+     * @param flow the flow field, already computed for every monster that can
+     * see the player
+     * @param sight the cells that can be seen from the player, which are the
+     * cells whose monsters can see the player, or null if there is no player
+     * to chase
+     * @param turnSeed a seed for this turn's random moves
+     */
+    public void run(TileMap tiles, OccupancyGrid occupancy, EntityStore monsters, ActiveSet awake,
+            FlowField flow, FieldOfView sight, long turnSeed) {
+        this.tiles = tiles;
+        this.occupancy = occupancy;
+        this.monsters = monsters;
+        this.flow = flow;
+        this.sight = sight;
+        this.turnSeed = turnSeed;
+        int n = awake.size();
+        if (order.length < n) {
+            order = new int[n];
+            moveFrom = new int[n];
+            moveTo = new int[n];
+        }
+        //these are indexed by slot, so they cover every monster
+        if (deferred.length < monsters.size()) {
+            deferred = new boolean[monsters.size()];
+            attacked = new boolean[monsters.size()];
+        }
+        for (int k = 0; k < n; k++) {
+            deferred[awake.get(k)] = false;
+            attacked[awake.get(k)] = false;
+        }
+        //sort the monsters into stripes, counting them first
+        Arrays.fill(stripeStart, 0);
+        for (int k = 0; k < n; k++) {
+            stripeStart[(monsters.getY(awake.get(k)) >> STRIPE_SHIFT) + 1]++;
+        }
+        for (int s = 1; s <= stripes; s++) {
+            stripeStart[s] += stripeStart[s - 1];
+        }
+        for (int k = 0; k < n; k++) {
+            int i = awake.get(k);
+            //stripeStart[s] is used as the next free place and put back below
+            order[stripeStart[monsters.getY(i) >> STRIPE_SHIFT]++] = i;
+        }
+        for (int s = stripes; s > 0; s--) {
+            stripeStart[s] = stripeStart[s - 1];
+        }
+        stripeStart[0] = 0;
+        //move the monsters that stay inside their stripe
+        if (n >= PARALLEL_THRESHOLD && stripes > 1) {
+            new StripeTask(0, stripes).invoke();
+        } else {
+            runStripes(0, stripes);
+        }
+        //pack the moves in the order they were made, stripe by stripe
+        moveCount = 0;
+        for (int k = 0; k < n; k++) {
+            if (moveFrom[k] != -1) {
+                moveFrom[moveCount] = moveFrom[k];
+                moveTo[moveCount] = moveTo[k];
+                moveCount++;
+            }
+        }
+        //then move the monsters crossing into another stripe, one at a time
+        for (int k = 0; k < n; k++) {
+            int i = awake.get(k);
+            if (deferred[i]) {
+                int x = monsters.getX(i);
+                int y = monsters.getY(i);
+                int d = direction(i, x, y);
+                int nx = x + DIRECTION_X[d];
+                int ny = y + DIRECTION_Y[d];
+                if (step(i, x, y, nx, ny)) {
+                    moveFrom[moveCount] = x + y * width;
+                    moveTo[moveCount] = nx + ny * width;
+                    moveCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the monsters in a range of stripes that stay inside their own
+     * stripe, holding back the rest
+     *
+     * @param from the first stripe
+     * @param to the stripe after the last one
+     */
+    private void runStripes(int from, int to) {
+        for (int s = from; s < to; s++) {
+            for (int k = stripeStart[s]; k < stripeStart[s + 1]; k++) {
+                int i = order[k];
+                moveFrom[k] = -1;
+                int x = monsters.getX(i);
+                int y = monsters.getY(i);
+                int d = direction(i, x, y);
+                int nx = x + DIRECTION_X[d];
+                int ny = y + DIRECTION_Y[d];
+                if (ny >> STRIPE_SHIFT != s) {
+                    //the cell belongs to another stripe
+                    deferred[i] = true;
+                    continue;
+                }
+                if (step(i, x, y, nx, ny)) {
+                    moveFrom[k] = x + y * width;
+                    moveTo[k] = nx + ny * width;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tries to move a monster into a cell, by the rules in
+     * GameEngine.checkMove(). Walking into the player records an attack.
+     *
+     * @param i the slot of the monster
+     * @param x the current X position of the monster
+     * @param y the current Y position of the monster
+     * @param nx the X position of the cell being entered
+     * @param ny the Y position of the cell being entered
+     * @return true if the monster moved
+     */
+    private boolean step(int i, int x, int y, int nx, int ny) {
+        switch (GameEngine.checkMove(tiles, occupancy, false, nx, ny)) {
+            case GameEngine.MOVE_ATTACK:
+                attacked[i] = true;
+                return false;
+            case GameEngine.MOVE_MOVED:
+                occupancy.move(x, y, nx, ny);
+                monsters.setPosition(i, nx, ny);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Chooses the direction a monster tries to move in
+     *
+     * @param i the slot of the monster
+     * @param x the X position of the monster
+     * @param y the Y position of the monster
+     * @return the index of the direction
+     */
+    private int direction(int i, int x, int y) {
+        int d = sight != null && sight.isVisible(x, y) ? flow.downhill(x, y) : -1;
+        if (d == -1) {
+            //the top two bits of a hash of the turn and the slot
+            d = (int) (RandomStream.mix(turnSeed + i * 0x9E3779B97F4A7C15L) >>> 62);
+        }
+        return d;
+    }
+
+    /**
+     * Returns whether a monster walked into the player this turn
+     *
+     * @param i the slot of the monster, which must be in the active set
+     * @return true if the monster attacked the player
+     */
+    public boolean attacked(int i) {
+        return attacked[i];
+    }
+
+    /**
+     * Returns the number of moves made this turn
+     *
+     * @return the number of moves that can be read with getMoveFrom() and
+     * getMoveTo()
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the cell a move was made from
+     *
+     * @param k the number of the move, in the order the moves were made
+     * @return the packed cell (x + y * width) that was left
+     */
+    public int getMoveFrom(int k) {
+        return moveFrom[k];
+    }
+
+    /**
+     * Returns the cell a move was made to
+     *
+     * @param k the number of the move, in the order the moves were made
+     * @return the packed cell (x + y * width) that was entered
+     */
+    public int getMoveTo(int k) {
+        return moveTo[k];
+    }
+}
@@ -0,0 +1,39 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The NoiseGenerator class is the original level layout: every cell is rolled
+ * on its own and made a wall with a fixed chance, giving an open level with
+ * scattered single walls. With a chance of 0 it makes one open arena, which
+ * is used for the boss level.
+ */
+public class NoiseGenerator implements LevelGenerator {
+
+    /**
+     * The chance out of 100 of each cell being a wall
+     */
+    private final int wallPercent;
+
+    /**
+     * Creates a NoiseGenerator
+     *
+     * @param wallPercent the chance out of 100 of each cell being a wall
+     */
+    public NoiseGenerator(int wallPercent) {
+        this.wallPercent = wallPercent;
+    }
+
+    @Override
+    public void carve(byte[] cells, int width, int height, RandomStream rng) {
+        int n = width * height;
+        for (int c = 0; c < n; c++) {
+            if (rng.nextInt(100) >= wallPercent) {
+                cells[c] = OPEN;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "noise";
+    }
+}
@@ -0,0 +1,111 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+
+/**
+ * The OccupancyGrid class records which entity is standing in each cell of a
+ * dungeon level. It is a flat int array indexed by x + y * width, so finding
+ * out what is in a cell is a single array read instead of a search through
+ * every monster. Empty cells hold EMPTY, the player is stored as PLAYER and a
+ * monster is stored as its slot in the monsters EntityStore plus one.
+ */
+public class OccupancyGrid {
+
+    /**
+     * The value stored in a cell that has no entity in it
+     */
+    public static final int EMPTY = 0;
+
+    /**
+     * The value stored in the cell that the player is standing in
+     */
+    public static final int PLAYER = -1;
+
+    /**
+     * The width of the level, used to pack x and y co-ordinates
+     */
+    private final int width;
+
+    /**
+     * The entity id for each cell in the level
+     */
+    private final int[] ids;
+
+    /**
+     * Creates an empty OccupancyGrid for a level with the given dimensions
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    public OccupancyGrid(int width, int height) {
+        this.width = width;
+        ids = new int[width * height];
+    }
+
+    /**
+     * Empties every cell, so the grid can be filled again for another level
+     * without creating a new array
+     */
+    public void clear() {
+        Arrays.fill(ids, EMPTY);
+    }
+
+    /**
+     * Converts a slot in the monsters store into the id stored in the grid
+     *
+     * @param index the slot of the monster in the monsters store
+     * @return the id used for that monster in the grid
+     */
+    public static int monsterId(int index) {
+        return index + 1;
+    }
+
+    /**
+     * Converts an id read from the grid back into an index in the monsters
+     * store
+     *
+     * @param id an id read from the grid, which must be a monster id
+     * @return the slot of the monster in the monsters store
+     */
+    public static int monsterIndex(int id) {
+        return id - 1;
+    }
+
+    /**
+     * Returns the id of the entity standing in a cell
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     * @return the id of the entity in the cell, or EMPTY if there is none
+     */
+    public int get(int x, int y) {
+        return ids[x + y * width];
+    }
+
+    /**
+     * Sets the id of the entity standing in a cell
+     *
+     * @param x the X co-ordinate of the cell
+     * @param y the Y co-ordinate of the cell
+     * @param id the id of the entity, or EMPTY to clear the cell
+     */
+    public void set(int x, int y, int id) {
+        ids[x + y * width] = id;
+    }
+
+    /**
+     * Moves whatever is standing in one cell into another cell, leaving the
+     * first cell empty
+     *
+     * @param fromX the X co-ordinate of the cell being left
+     * @param fromY the Y co-ordinate of the cell being left
+     * @param toX the X co-ordinate of the cell being entered
+     * @param toY the Y co-ordinate of the cell being entered
+     */
+    public void move(int fromX, int fromY, int toX, int toY) {
+        int from = fromX + fromY * width;
+        int id = ids[from];
+        ids[from] = EMPTY;
+        ids[toX + toY * width] = id;
+    }
+}
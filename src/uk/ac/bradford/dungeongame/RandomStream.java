@@ -0,0 +1,91 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The RandomStream class is a small, fast random number generator using the
+ * SplitMix64 algorithm. Its whole state is a single long that can be read and
+ * set, so a stream can be saved and restored exactly. It is not thread safe,
+ * but nothing is shared between streams, so each part of the game (and each
+ * thread) can have its own without them slowing each other down.
+ *
+ * derive() turns a game seed, a stream number and an index (such as a depth
+ * or a turn) into the seed for a separate stream. This lets every level be
+ * generated from the game seed and its depth alone, however many random
+ * numbers the rest of the game has used.
+ */
+public class RandomStream implements RandomGenerator {
+
+    /**
+     * The amount the state moves on by for each number, the golden ratio in
+     * fixed point
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The current state of the stream
+     */
+    private long state;
+
+    /**
+     * Creates a RandomStream starting from a seed
+     *
+     * @param seed the starting state
+     */
+    public RandomStream(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Returns the current state, which can be passed to setState() later to
+     * carry on from this point
+     *
+     * @return the state of the stream
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state of the stream, restarting it from a seed or from a state
+     * returned by getState()
+     *
+     * @param state the new state
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * Scrambles the bits of a number, the finishing step of SplitMix64. Every
+     * bit of the input affects every bit of the output, so numbers that are
+     * close together give results that look unrelated.
+     *
+     * @param z the number to scramble
+     * @return the scrambled number
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Works out the seed of a separate stream from a game seed
+     *
+     * @param seed the seed of the game
+     * @param stream a number identifying what the stream is used for
+     * @param index a number identifying which of those streams this is, such
+     * as a depth or a turn
+     * @return a seed for the stream
+     */
+    public static long derive(long seed, long stream, long index) {
+        return mix(mix(seed + stream * GOLDEN_GAMMA) + index * GOLDEN_GAMMA);
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The RoomsGenerator class lays out rooms joined by corridors using binary
+ * space partitioning. The inside of the level is split in two, across its
+ * longer side, and each half is split again until the pieces are too small
+ * to split. A room is carved inside each piece, and after a piece has been
+ * split the middles of a room from each half are joined with an L shaped
+ * corridor, so every room can be reached.
+ *
+ * The splitting is done by recursion on plain ints, and each call returns the
+ * packed middle of one of its rooms for its parent to join up, so no objects
+ * are created for the pieces.
+ */
+public class RoomsGenerator implements LevelGenerator {
+
+    /**
+     * The smallest piece that is split again, in tiles. Pieces smaller than
+     * twice this across both sides become rooms.
+     */
+    private static final int MIN_PIECE = 6;
+
+    /**
+     * The smallest room, in tiles across
+     */
+    private static final int MIN_ROOM = 3;
+
+    /**
+     * The level being carved and its width, set for the length of a call to
+     * carve()
+     */
+    private byte[] cells;
+    private int width;
+    private RandomStream rng;
+
+    @Override
+    public void carve(byte[] cells, int width, int height, RandomStream rng) {
+        this.cells = cells;
+        this.width = width;
+        this.rng = rng;
+        //the border is a wall, so pieces cover the inside of the level
+        split(1, 1, width - 2, height - 2);
+        this.cells = null;
+        this.rng = null;
+    }
+
+    /**
+     * Splits a piece of the level, or carves a room in it if it is too small
+     * to split
+     *
+     * @param x the left edge of the piece
+     * @param y the top edge of the piece
+     * @param w the width of the piece
+     * @param h the height of the piece
+     * @return the packed middle of a room in the piece
+     */
+    private int split(int x, int y, int w, int h) {
+        boolean across = w >= h;
+        int length = across ? w : h;
+        if (length < MIN_PIECE * 2) {
+            return room(x, y, w, h);
+        }
+        //cut somewhere that leaves both halves at least MIN_PIECE
+        int cut = MIN_PIECE + rng.nextInt(length - MIN_PIECE * 2 + 1);
+        int a;
+        int b;
+        if (across) {
+            a = split(x, y, cut, h);
+            b = split(x + cut, y, w - cut, h);
+        } else {
+            a = split(x, y, w, cut);
+            b = split(x, y + cut, w, h - cut);
+        }
+        corridor(a, b);
+        return rng.nextBoolean() ? a : b;
+    }
+
+    /**
+     * Carves a room of a random size and position inside a piece. The room
+     * leaves a wall on the right and bottom of the piece where there is room
+     * for one, so rooms next to each other do not run together.
+     *
+     * @param x the left edge of the piece
+     * @param y the top edge of the piece
+     * @param w the width of the piece
+     * @param h the height of the piece
+     * @return the packed middle of the room
+     */
+    private int room(int x, int y, int w, int h) {
+        int maxW = w > MIN_ROOM ? w - 1 : w;
+        int maxH = h > MIN_ROOM ? h - 1 : h;
+        int rw = Math.min(maxW, MIN_ROOM + rng.nextInt(Math.max(1, maxW - MIN_ROOM + 1)));
+        int rh = Math.min(maxH, MIN_ROOM + rng.nextInt(Math.max(1, maxH - MIN_ROOM + 1)));
+        int rx = x + rng.nextInt(maxW - rw + 1);
+        int ry = y + rng.nextInt(maxH - rh + 1);
+        for (int j = ry; j < ry + rh; j++) {
+            int row = j * width;
+            for (int i = rx; i < rx + rw; i++) {
+                cells[row + i] = OPEN;
+            }
+        }
+        return (rx + rw / 2) + (ry + rh / 2) * width;
+    }
+
+    /**
+     * Carves an L shaped corridor between two cells, going across first and
+     * then up or down
+     *
+     * @param a the packed cell to start from
+     * @param b the packed cell to finish at
+     */
+    private void corridor(int a, int b) {
+        int ax = a % width;
+        int ay = a / width;
+        int bx = b % width;
+        int by = b / width;
+        int row = ay * width;
+        for (int i = Math.min(ax, bx); i <= Math.max(ax, bx); i++) {
+            cells[row + i] = OPEN;
+        }
+        for (int j = Math.min(ay, by); j <= Math.max(ay, by); j++) {
+            cells[bx + j * width] = OPEN;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "rooms";
+    }
+}
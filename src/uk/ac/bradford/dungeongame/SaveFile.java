@@ -0,0 +1,265 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+
+/**
+ * The SaveFile class reads and writes the compact binary files used to save a
+ * game. A file is a header (MAGIC and VERSION), the body written by the
+ * GameEngine, and a CRC32 of everything before it, so a damaged or truncated
+ * file is rejected instead of being loaded. Files are read and written in one
+ * go through a FileChannel, and a save is written to a temporary file that is
+ * then moved over the old one, so a crash part way through a save never
+ * leaves a broken file behind.
+ *
+ * It also has the helpers the engine uses for the body: tiles are packed four
+ * to a byte, two bits each, and entities are written as fixed size records of
+ * ENTITY_BYTES bytes. A default sized level with a few monsters saves in
+ * under 300 bytes.
+ */
+public class SaveFile {
+
+    /**
+     * The first four bytes of every save file, "DSAV"
+     */
+    public static final int MAGIC = 0x44534156;
+
+    /**
+     * The version of the format. Files with a different version are not
+     * loaded, and this must be changed whenever the layout of the body is.
+     */
+    public static final short VERSION = 5;
+
+    /**
+     * The size of the header and of the CRC at the end, in bytes
+     */
+    public static final int HEADER_BYTES = 6;
+    public static final int CRC_BYTES = 4;
+
+    /**
+     * The size of each entity record: X and Y as shorts, then health, maximum
+     * health, damage and armour as ints, then the last turn the entity was
+     * awake as a long
+     */
+    public static final int ENTITY_BYTES = 28;
+
+    /**
+     * The number of bits used for each tile. There are four TileTypes, so
+     * each one fits in two bits.
+     */
+    private static final int TILE_BITS = 2;
+    private static final int TILE_MASK = (1 << TILE_BITS) - 1;
+
+    /**
+     * Creates a buffer for a save file with the header already written
+     *
+     * @param bodyBytes the size of the body that will be written after the
+     * header
+     * @return a buffer positioned at the start of the body
+     */
+    public static ByteBuffer allocate(int bodyBytes) {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + bodyBytes + CRC_BYTES);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        return out;
+    }
+
+    /**
+     * Finishes a buffer from allocate() by adding the CRC, and writes it to a
+     * file. The file is written next to the target and then moved into place.
+     *
+     * @param file the file to write
+     * @param out the buffer, positioned at the end of the body
+     * @throws IOException if the file can not be written
+     */
+    public static void write(Path file, ByteBuffer out) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a whole save file and checks its header and CRC
+     *
+     * @param file the file to read
+     * @return a buffer positioned at the start of the body, with its limit at
+     * the end of the body
+     * @throws IOException if the file can not be read, is not a save file, is
+     * from a different version or is damaged
+     */
+    public static ByteBuffer read(Path file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + CRC_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a save file");
+            }
+            in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining()) {
+                if (channel.read(in) == -1) {
+                    throw new IOException(file + " was cut short while reading");
+                }
+            }
+        }
+        in.flip();
+        if (in.getInt() != MAGIC) {
+            throw new IOException(file + " is not a save file");
+        }
+        short version = in.getShort();
+        if (version != VERSION) {
+            throw new IOException(file + " is version " + version + ", expected " + VERSION);
+        }
+        int end = in.limit() - CRC_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), 0, end);
+        if (in.getInt(end) != (int) crc.getValue()) {
+            throw new IOException(file + " is damaged");
+        }
+        in.limit(end);
+        return in;
+    }
+
+    /**
+     * Returns the number of bytes needed to pack the tiles of a level
+     *
+     * @param width the width of the level
+     * @param height the height of the level
+     * @return the size of the packed tiles in bytes
+     */
+    public static int tileBytes(int width, int height) {
+        return (width * height * TILE_BITS + 7) >> 3;
+    }
+
+    /**
+     * Packs the tiles of a level into a buffer, row by row, four tiles to a
+     * byte with the first tile in the lowest two bits
+     *
+     * @param tiles the level
+     * @param out the buffer to write tileBytes() bytes to
+     */
+    public static void packTiles(TileMap tiles, ByteBuffer out) {
+        byte[] row = new byte[tiles.getWidth()];
+        int bits = 0;
+        int count = 0;
+        for (int y = 0; y < tiles.getHeight(); y++) {
+            tiles.getRow(y, row);
+            for (int x = 0; x < row.length; x++) {
+                bits |= row[x] << (count * TILE_BITS);
+                if (++count == 4) {
+                    out.put((byte) bits);
+                    bits = 0;
+                    count = 0;
+                }
+            }
+        }
+        if (count > 0) {
+            out.put((byte) bits);
+        }
+    }
+
+    /**
+     * Unpacks tiles written by packTiles() into a new level
+     *
+     * @param in the buffer to read tileBytes() bytes from
+     * @param width the width of the level
+     * @param height the height of the level
+     * @return a TileMap holding the tiles
+     */
+    public static TileMap unpackTiles(ByteBuffer in, int width, int height) {
+        TileMap tiles = new TileMap(width, height);
+        byte[] row = new byte[width];
+        int bits = 0;
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (count == 0) {
+                    bits = in.get() & 0xFF;
+                    count = 4;
+                }
+                row[x] = (byte) (bits & TILE_MASK);
+                bits >>= TILE_BITS;
+                count--;
+            }
+            tiles.setRow(y, row);
+        }
+        return tiles;
+    }
+
+    /**
+     * Writes an entity as a fixed size record
+     *
+     * @param out the buffer to write ENTITY_BYTES bytes to
+     * @param s the store holding the entity
+     * @param i the slot of the entity in the store
+     */
+    public static void putEntity(ByteBuffer out, EntityStore s, int i) {
+        out.putShort((short) s.getX(i));
+        out.putShort((short) s.getY(i));
+        out.putInt(s.getHealth(i));
+        out.putInt(s.getMaxHealth(i));
+        out.putInt(s.getDamage(i));
+        out.putInt(s.getArmour(i));
+        out.putLong(s.getAwakeTurn(i));
+    }
+
+    /**
+     * Reads an entity record written by putEntity() and adds it to a store
+     *
+     * @param in the buffer to read ENTITY_BYTES bytes from
+     * @param s the store to add the entity to
+     * @param type the type of the entity, which is not stored in the record
+     * @param width the width of the level, used to check the position
+     * @param height the height of the level, used to check the position
+     * @return the slot the entity was added in
+     * @throws IOException if the entity is outside the level
+     */
+    public static int getEntity(ByteBuffer in, EntityStore s, EntityType type, int width, int height)
+            throws IOException {
+        int x = in.getShort();
+        int y = in.getShort();
+        int health = in.getInt();
+        int maxHealth = in.getInt();
+        int damage = in.getInt();
+        int armour = in.getInt();
+        long awakeTurn = in.getLong();
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new IOException("Entity at " + x + "," + y + " is outside the level");
+        }
+        int i = s.add(maxHealth, x, y, type);
+        //a new entity has full health, no armour and the default damage
+        s.changeHealth(i, health - maxHealth);
+        s.setDamage(i, damage);
+        s.changeArmour(i, armour);
+        s.setAwakeTurn(i, awakeTurn);
+        return i;
+    }
+
+    /**
+     * Turns a read past the end of a body into an IOException
+     *
+     * @param file the file being read
+     * @param e the exception thrown by the buffer
+     * @return an IOException to throw
+     */
+    public static IOException truncated(Path file, BufferUnderflowException e) {
+        return new IOException(file + " is shorter than its contents say", e);
+    }
+}
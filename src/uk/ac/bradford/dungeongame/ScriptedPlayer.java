@@ -0,0 +1,170 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.Random;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * A simple computer player used for simulating games. It is a HeadlessView,
+ * so it sees the level through updateDisplay in the same way the GUI does.
+ * Each turn it attacks a monster next to the player if there is one, and
+ * otherwise walks along the shortest path to the stairs (or to the nearest
+ * monster on the last level). If neither can be reached it moves randomly.
+ */
+public class ScriptedPlayer extends HeadlessView {
+
+    /**
+     * The X and Y steps for the four directions the player can move in
+     */
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+
+    /**
+     * Random number generator used when there is nowhere to head for
+     */
+    private final Random rng;
+
+    /**
+     * The frame from the last display update
+     */
+    private FrameSnapshot frame;
+
+    /**
+     * Arrays reused by the path search each turn. queue holds packed cells and
+     * from holds the cell each visited cell was reached from, or -1.
+     */
+    private int[] queue;
+    private int[] from;
+    private boolean[] target;
+
+    /**
+     * Creates a ScriptedPlayer that uses the given seed for its random moves
+     *
+     * @param seed the seed for the random number generator
+     */
+    public ScriptedPlayer(long seed) {
+        rng = new Random(seed);
+    }
+
+    @Override
+    public void updateDisplay(FrameSnapshot frame) {
+        super.updateDisplay(frame);
+        this.frame = frame;
+    }
+
+    @Override
+    public boolean wantsFrames() {
+        return true;
+    }
+
+    /**
+     * Picks the next move and makes it on the engine, then runs the turn
+     *
+     * @param engine the engine this player is playing
+     */
+    public void playTurn(GameEngine engine) {
+        int dir = chooseDirection();
+        engine.movePlayer(DIRECTION_X[dir], DIRECTION_Y[dir]);
+        engine.doTurn();
+    }
+
+    /**
+     * Chooses which direction to move in this turn
+     *
+     * @return the index of the direction, 0 (up), 1 (right), 2 (down) or 3
+     * (left)
+     */
+    private int chooseDirection() {
+        int px = frame.getPlayerX();
+        int py = frame.getPlayerY();
+        int count = frame.getMonsterCount();
+        //hit any monster next to the player
+        for (int i = 0; i < count; i++) {
+            int mx = frame.getMonsterX(i);
+            int my = frame.getMonsterY(i);
+            if (Math.abs(mx - px) + Math.abs(my - py) == 1) {
+                for (int d = 0; d < 4; d++) {
+                    if (px + DIRECTION_X[d] == mx && py + DIRECTION_Y[d] == my) {
+                        return d;
+                    }
+                }
+            }
+        }
+        TileMap tiles = frame.getTiles();
+        int width = tiles.getWidth();
+        int height = tiles.getHeight();
+        if (queue == null || queue.length != width * height) {
+            queue = new int[width * height];
+            from = new int[width * height];
+            target = new boolean[width * height];
+        }
+        //mark the stairs as targets, or the monsters if there are no stairs
+        Arrays.fill(target, false);
+        boolean anyTarget = false;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (tiles.get(x, y) == TileType.STAIRS) {
+                    target[x + y * width] = true;
+                    anyTarget = true;
+                }
+            }
+        }
+        if (!anyTarget) {
+            for (int i = 0; i < count; i++) {
+                target[frame.getMonsterX(i) + frame.getMonsterY(i) * width] = true;
+                anyTarget = true;
+            }
+        }
+        if (anyTarget) {
+            int dir = firstStepTowardsTarget(px, py, width, height);
+            if (dir != -1) {
+                return dir;
+            }
+        }
+        return rng.nextInt(4);
+    }
+
+    /**
+     * Breadth first search from the player to the nearest target cell
+     *
+     * @return the direction of the first step on the path, or -1 if no target
+     * can be reached
+     */
+    private int firstStepTowardsTarget(int px, int py, int width, int height) {
+        TileMap tiles = frame.getTiles();
+        Arrays.fill(from, -1);
+        int start = px + py * width;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        from[start] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (target[cell]) {
+                //walk back to the cell next to the start
+                while (from[cell] != start) {
+                    cell = from[cell];
+                }
+                int dx = cell % width - px;
+                int dy = cell / width - py;
+                for (int d = 0; d < 4; d++) {
+                    if (DIRECTION_X[d] == dx && DIRECTION_Y[d] == dy) {
+                        return d;
+                    }
+                }
+            }
+            int x = cell % width;
+            int y = cell / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DIRECTION_X[d];
+                int ny = y + DIRECTION_Y[d];
+                int next = nx + ny * width;
+                if (tiles.get(nx, ny) != TileType.WALL && from[next] == -1) {
+                    from[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,122 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * The SpawnIndex class keeps track of the free cells in a dungeon level that
+ * the player or monsters can be spawned in. Cells are stored as packed int
+ * values (x + y * width) in a dense array, with a second array recording where
+ * each cell sits in the dense array. This means adding a cell, removing a cell
+ * and picking a random cell are all constant time operations, and no Point
+ * objects are created.
+ */
+public class SpawnIndex {
+
+    /**
+     * The packed cells currently in the index. Only the first size elements
+     * are in use.
+     */
+    private final int[] cells;
+
+    /**
+     * For each packed cell in the level, the position of that cell in the
+     * cells array, or -1 if the cell is not in the index.
+     */
+    private final int[] slots;
+
+    /**
+     * The number of cells currently in the index
+     */
+    private int size;
+
+    /**
+     * Creates an empty SpawnIndex able to hold every cell of a level with the
+     * given dimensions.
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     */
+    public SpawnIndex(int width, int height) {
+        cells = new int[width * height];
+        slots = new int[width * height];
+        Arrays.fill(slots, -1);
+    }
+
+    /**
+     * Empties the index so it can be filled again for another level. Only the
+     * cells currently in the index are touched, so no arrays are created and
+     * the cost follows the number of free cells, not the size of the level.
+     */
+    public void clear() {
+        for (int k = 0; k < size; k++) {
+            slots[cells[k]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds a packed cell to the index. Adding a cell that is already in the
+     * index does nothing.
+     *
+     * @param cell the packed cell (x + y * width) to add
+     */
+    public void add(int cell) {
+        if (slots[cell] == -1) {
+            slots[cell] = size;
+            cells[size++] = cell;
+        }
+    }
+
+    /**
+     * Removes a packed cell from the index by moving the last cell into its
+     * place. Removing a cell that is not in the index does nothing.
+     *
+     * @param cell the packed cell (x + y * width) to remove
+     */
+    public void remove(int cell) {
+        int slot = slots[cell];
+        if (slot != -1) {
+            //move the last cell into the gap left by this one
+            int last = cells[--size];
+            cells[slot] = last;
+            slots[last] = slot;
+            slots[cell] = -1;
+        }
+    }
+
+    /**
+     * Checks whether a packed cell is currently free for spawning
+     *
+     * @param cell the packed cell (x + y * width) to check
+     * @return true if the cell is in the index
+     */
+    public boolean contains(int cell) {
+        return slots[cell] != -1;
+    }
+
+    /**
+     * Returns the number of free cells in the index
+     *
+     * @return the number of cells that can currently be spawned in
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Picks a random cell from the index and removes it, so that the same cell
+     * can not be handed out twice.
+     *
+     * @param rng the random number generator used to pick the cell
+     * @return the packed cell that was removed, or -1 if the index is empty
+     */
+    public int takeRandom(RandomGenerator rng) {
+        if (size == 0) {
+            return -1;
+        }
+        int cell = cells[rng.nextInt(size)];
+        remove(cell);
+        return cell;
+    }
+}
@@ -0,0 +1,299 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The TileMap class stores the tiles of a dungeon level. Tiles are kept as
+ * byte ordinals of TileType in square chunks of CHUNK_SIZE x CHUNK_SIZE tiles.
+ * A chunk is only created the first time a tile in it is set to something
+ * other than a wall, so regions that are entirely wall take up no memory. This
+ * relies on WALL being the first TileType, so a zeroed byte is a wall.
+ * Reading a tile outside the level returns WALL.
+ *
+ * A read-only copy of the map can be taken with snapshot(). The copy shares
+ * its chunks with the original, and the original copies a shared chunk the
+ * next time one of its tiles is changed, so taking a snapshot is cheap and
+ * only changed chunks are ever duplicated.
+ */
+public class TileMap {
+
+    /**
+     * Chunks are CHUNK_SIZE tiles wide and high. CHUNK_SHIFT and CHUNK_MASK
+     * are used to split a co-ordinate into a chunk and a position inside it.
+     */
+    public static final int CHUNK_SHIFT = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    public static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The largest width or height a level can have
+     */
+    public static final int MAX_SIZE = 4096;
+
+    /**
+     * The smallest width or height a level can have, enough for a border of
+     * walls around a single open tile
+     */
+    public static final int MIN_SIZE = 3;
+
+    /**
+     * Every TileType, indexed by ordinal
+     */
+    private static final TileType[] TYPES = TileType.values();
+
+    /**
+     * The size of the level in tiles
+     */
+    private final int width;
+    private final int height;
+
+    /**
+     * The number of chunks across the level
+     */
+    private final int chunksX;
+
+    /**
+     * The chunks of the level, indexed by chunkX + chunkY * chunksX. A null
+     * chunk is all walls.
+     */
+    private final byte[][] chunks;
+
+    /**
+     * Counts changes to the map. It goes up every time a tile is changed, so
+     * anything that caches the tiles (such as the GUI) can tell when its copy
+     * is out of date.
+     */
+    private int version;
+
+    /**
+     * For each chunk, whether it is shared with a snapshot and must be copied
+     * before it is changed. null for a snapshot, which can not be changed.
+     */
+    private final boolean[] shared;
+
+    /**
+     * The map this map was first created as. Snapshots share the origin of the
+     * map they were taken from, so they can be recognised as the same level.
+     */
+    private final TileMap origin;
+
+    /**
+     * Creates a TileMap where every tile is a wall
+     *
+     * @param width the width of the level in tiles
+     * @param height the height of the level in tiles
+     * @throws IllegalArgumentException if either size is smaller than
+     * MIN_SIZE or larger than MAX_SIZE
+     */
+    public TileMap(int width, int height) {
+        if (width < MIN_SIZE || height < MIN_SIZE || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Level size must be between " + MIN_SIZE + " and "
+                    + MAX_SIZE + " tiles, was " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        chunksX = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        int chunksY = (height + CHUNK_MASK) >> CHUNK_SHIFT;
+        chunks = new byte[chunksX * chunksY][];
+        shared = new boolean[chunks.length];
+        origin = this;
+    }
+
+    /**
+     * Creates a read-only snapshot of another map, sharing its chunks
+     *
+     * @param source the map to take a snapshot of
+     */
+    private TileMap(TileMap source) {
+        width = source.width;
+        height = source.height;
+        chunksX = source.chunksX;
+        chunks = source.chunks.clone();
+        version = source.version;
+        shared = null;
+        origin = source.origin;
+    }
+
+    /**
+     * Takes a read-only snapshot of this map. The snapshot will not change
+     * when this map does, so it can safely be read by another thread.
+     *
+     * @return a TileMap holding the current tiles that can not be changed
+     */
+    public TileMap snapshot() {
+        if (shared == null) {
+            //a snapshot never changes, so it can be handed out again
+            return this;
+        }
+        Arrays.fill(shared, true);
+        return new TileMap(this);
+    }
+
+    /**
+     * Checks whether another map is this map, or a snapshot of it, or the map
+     * this map is a snapshot of
+     *
+     * @param other the map to compare with
+     * @return true if both maps are the same level
+     */
+    public boolean isSameLevel(TileMap other) {
+        return other != null && other.origin == origin;
+    }
+
+    /**
+     * Returns the width of the level
+     *
+     * @return the width in tiles
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the level
+     *
+     * @return the height in tiles
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of changes made to the map so far
+     *
+     * @return a number that changes whenever a tile changes
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the tile at a position
+     *
+     * @param x the X co-ordinate of the tile
+     * @param y the Y co-ordinate of the tile
+     * @return the TileType at that position, or WALL if it is outside the level
+     */
+    public TileType get(int x, int y) {
+        return TYPES[getOrdinal(x, y)];
+    }
+
+    /**
+     * Returns the ordinal of the tile at a position, avoiding the array lookup
+     * of get() for code that only needs to compare tiles
+     *
+     * @param x the X co-ordinate of the tile
+     * @param y the Y co-ordinate of the tile
+     * @return the ordinal of the TileType at that position, or the ordinal of
+     * WALL if it is outside the level
+     */
+    public int getOrdinal(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        byte[] chunk = chunks[(x >> CHUNK_SHIFT) + (y >> CHUNK_SHIFT) * chunksX];
+        if (chunk == null) {
+            return 0;
+        }
+        return chunk[(x & CHUNK_MASK) + ((y & CHUNK_MASK) << CHUNK_SHIFT)];
+    }
+
+    /**
+     * Sets the tile at a position, creating its chunk if needed
+     *
+     * @param x the X co-ordinate of the tile
+     * @param y the Y co-ordinate of the tile
+     * @param type the new TileType for that position
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    public void set(int x, int y, TileType type) {
+        if (shared == null) {
+            throw new UnsupportedOperationException("Snapshots can not be changed");
+        }
+        int c = (x >> CHUNK_SHIFT) + (y >> CHUNK_SHIFT) * chunksX;
+        byte[] chunk = chunks[c];
+        if (shared[c]) {
+            //a snapshot is still using this chunk, so change a copy of it
+            if (chunk != null) {
+                chunk = chunks[c] = chunk.clone();
+            }
+            shared[c] = false;
+        }
+        if (chunk == null) {
+            //walls are already stored as a missing chunk
+            if (type == TileType.WALL) {
+                return;
+            }
+            chunk = chunks[c] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        }
+        int i = (x & CHUNK_MASK) + ((y & CHUNK_MASK) << CHUNK_SHIFT);
+        if (chunk[i] != type.ordinal()) {
+            chunk[i] = (byte) type.ordinal();
+            version++;
+        }
+    }
+
+    /**
+     * Copies the ordinals of a whole row of tiles into an array, much faster
+     * than calling getOrdinal() for each tile
+     *
+     * @param y the Y co-ordinate of the row
+     * @param row an array of at least getWidth() elements to fill
+     */
+    public void getRow(int y, byte[] row) {
+        int base = (y >> CHUNK_SHIFT) * chunksX;
+        int offset = (y & CHUNK_MASK) << CHUNK_SHIFT;
+        for (int cx = 0; cx < chunksX; cx++) {
+            int x = cx << CHUNK_SHIFT;
+            int n = Math.min(CHUNK_SIZE, width - x);
+            byte[] chunk = chunks[base + cx];
+            if (chunk == null) {
+                Arrays.fill(row, x, x + n, (byte) 0);
+            } else {
+                System.arraycopy(chunk, offset, row, x, n);
+            }
+        }
+    }
+
+    /**
+     * Sets a whole row of tiles from an array of ordinals, much faster than
+     * calling set() for each tile. Chunks are only created for parts of the
+     * row that are not all walls.
+     *
+     * @param y the Y co-ordinate of the row
+     * @param row an array of at least getWidth() TileType ordinals
+     * @throws UnsupportedOperationException if this map is a snapshot
+     */
+    public void setRow(int y, byte[] row) {
+        if (shared == null) {
+            throw new UnsupportedOperationException("Snapshots can not be changed");
+        }
+        int base = (y >> CHUNK_SHIFT) * chunksX;
+        int offset = (y & CHUNK_MASK) << CHUNK_SHIFT;
+        for (int cx = 0; cx < chunksX; cx++) {
+            int x = cx << CHUNK_SHIFT;
+            int n = Math.min(CHUNK_SIZE, width - x);
+            int c = base + cx;
+            byte[] chunk = chunks[c];
+            if (chunk == null) {
+                //walls are already stored as a missing chunk
+                boolean allWalls = true;
+                for (int i = x; i < x + n && allWalls; i++) {
+                    allWalls = row[i] == 0;
+                }
+                if (allWalls) {
+                    continue;
+                }
+                chunk = chunks[c] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+                shared[c] = false;
+            } else if (shared[c]) {
+                //a snapshot is still using this chunk, so change a copy of it
+                chunk = chunks[c] = chunk.clone();
+                shared[c] = false;
+            }
+            System.arraycopy(row, x, chunk, offset, n);
+        }
+        version++;
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+
+/**
+ * Checks that an ActiveSet wakes exactly the monsters inside the square around
+ * the player whichever way it finds them, and that in a game the sleeping
+ * monsters stay where they are and only catch up a few steps when they wake.
+ */
+class ActiveSetTest {
+
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 50;
+
+    @Test
+    void wakesTheMonstersInsideTheSquare() {
+        Random rng = new Random(8);
+        OccupancyGrid occupancy = new OccupancyGrid(WIDTH, HEIGHT);
+        EntityStore monsters = new EntityStore(16);
+        while (monsters.size() < 400) {
+            int x = rng.nextInt(WIDTH);
+            int y = rng.nextInt(HEIGHT);
+            if (occupancy.get(x, y) == OccupancyGrid.EMPTY) {
+                int i = monsters.add(10, x, y, EntityType.MONSTER);
+                occupancy.set(x, y, OccupancyGrid.monsterId(i));
+            }
+        }
+        ActiveSet awake = new ActiveSet();
+        //small squares read the grid, large ones check each monster, and some
+        //squares are cut off by the edges
+        int[][] squares = {{30, 25, 2}, {1, 1, 3}, {58, 48, 5}, {30, 25, 20}, {5, 45, 15}};
+        for (int[] square : squares) {
+            awake.collect(occupancy, monsters, WIDTH, HEIGHT, square[0], square[1], square[2]);
+            List<Integer> expected = new ArrayList<>();
+            boolean readGrid = monsters.size() >= cellsInSquare(square);
+            if (readGrid) {
+                //row by row, as the grid is read
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        int id = occupancy.get(x, y);
+                        if (id > OccupancyGrid.EMPTY && inSquare(x, y, square)) {
+                            expected.add(OccupancyGrid.monsterIndex(id));
+                        }
+                    }
+                }
+            } else {
+                for (int i = 0; i < monsters.size(); i++) {
+                    if (inSquare(monsters.getX(i), monsters.getY(i), square)) {
+                        expected.add(i);
+                    }
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            for (int k = 0; k < awake.size(); k++) {
+                actual.add(awake.get(k));
+            }
+            assertEquals(expected, actual, "square " + square[0] + "," + square[1] + " radius " + square[2]);
+        }
+        awake.all(7);
+        assertEquals(7, awake.size());
+        assertEquals(6, awake.get(6));
+    }
+
+    @Test
+    void sleepingMonstersWaitAndCatchUp() {
+        GameEngine engine = new GameEngine(new HeadlessView(), 12, 160, 120);
+        engine.loadLevel(300);
+        Entity player = engine.getPlayer();
+        //the player never kills anything, so every slot keeps its monster
+        player.changeDamage(0);
+        Random rng = new Random(12);
+        int caughtUp = 0;
+        int direction = 1;
+        for (int t = 0; t < 300; t++) {
+            EntityStore monsters = engine.getMonsters();
+            int count = monsters.size();
+            int[] x = new int[count];
+            int[] y = new int[count];
+            long[] awakeTurn = new long[count];
+            for (int i = 0; i < count; i++) {
+                x[i] = monsters.getX(i);
+                y[i] = monsters.getY(i);
+                awakeTurn[i] = monsters.getAwakeTurn(i);
+            }
+            player.changeHealth(player.getMaxHealth());
+            int depth = engine.getDepth();
+            int fromX = player.getX();
+            int fromY = player.getY();
+            engine.movePlayer(new int[] {0, 1, 0, -1}[direction], new int[] {-1, 0, 1, 0}[direction]);
+            int px = player.getX();
+            int py = player.getY();
+            if (px == fromX && py == fromY) {
+                //blocked, so try another way next turn
+                direction = rng.nextInt(4);
+            }
+            engine.doTurn();
+            if (engine.getDepth() != depth) {
+                //walked onto the stairs, and the level has gone
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                String monster = "turn " + t + ", monster " + i;
+                boolean near = Math.abs(x[i] - px) <= GameEngine.ACTIVE_RADIUS
+                        && Math.abs(y[i] - py) <= GameEngine.ACTIVE_RADIUS;
+                boolean woke = monsters.getAwakeTurn(i) != awakeTurn[i];
+                assertEquals(near, woke, monster);
+                int moved = Math.abs(monsters.getX(i) - x[i]) + Math.abs(monsters.getY(i) - y[i]);
+                if (!woke) {
+                    assertEquals(0, moved, monster + " moved in its sleep");
+                } else if (monsters.getAwakeTurn(i) - awakeTurn[i] > 1) {
+                    //slept through some turns, then its own move this turn
+                    assertTrue(moved <= GameEngine.CATCH_UP_STEPS + 1, monster + " moved " + moved);
+                    caughtUp++;
+                } else {
+                    assertTrue(moved <= 1, monster + " moved " + moved);
+                }
+            }
+        }
+        assertTrue(caughtUp > 0, "no monster woke up");
+    }
+
+    private static boolean inSquare(int x, int y, int[] square) {
+        return Math.abs(x - square[0]) <= square[2] && Math.abs(y - square[1]) <= square[2];
+    }
+
+    private static int cellsInSquare(int[] square) {
+        int across = Math.min(WIDTH - 1, square[0] + square[2]) - Math.max(0, square[0] - square[2]) + 1;
+        int down = Math.min(HEIGHT - 1, square[1] + square[2]) - Math.max(0, square[1] - square[2]) + 1;
+        return across * down;
+    }
+}
@@ -0,0 +1,149 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that Components joins open cells into the same components as a flood
+ * fill, and that largest() picks the largest of them as cells are joined.
+ */
+class ComponentsTest {
+
+    private static final int WIDTH = 50;
+    private static final int HEIGHT = 40;
+
+    private final Components components = new Components(WIDTH * HEIGHT);
+
+    @Test
+    void matchesFloodFill() {
+        for (long seed = 1; seed <= 10; seed++) {
+            boolean[] open = randomCells(seed);
+            components.clear();
+            join(open);
+            int[] label = floodFill(open);
+            int[] sizes = new int[WIDTH * HEIGHT];
+            int biggest = 0;
+            for (int c = 0; c < open.length; c++) {
+                if (open[c]) {
+                    biggest = Math.max(biggest, ++sizes[label[c]]);
+                }
+            }
+            String level = "seed " + seed;
+            for (int c = 0; c < open.length; c++) {
+                for (int n : new int[] {c + 1, c + WIDTH}) {
+                    if (open[c] && n < open.length && open[n]) {
+                        assertEquals(label[c] == label[n], components.find(c) == components.find(n),
+                                level + ", cells " + c + " and " + n);
+                    }
+                }
+                if (open[c]) {
+                    assertEquals(sizes[label[c]], components.size(c), level + ", cell " + c);
+                }
+            }
+            assertEquals(biggest, components.size(components.largest()), level);
+        }
+    }
+
+    @Test
+    void largestFollowsJoins() {
+        components.add(0);
+        components.addTo(1, 0);
+        components.add(10);
+        components.addTo(11, 10);
+        //two components of two cells, so the first to reach that size wins
+        assertEquals(0, components.find(components.largest()));
+        components.addTo(12, 10);
+        assertEquals(10, components.largest());
+        //joining a smaller component into the largest keeps its root
+        components.union(1, 12);
+        assertEquals(5, components.size(components.largest()));
+        assertEquals(components.find(0), components.largest());
+        assertEquals(components.find(11), components.largest());
+    }
+
+    @Test
+    void clearedComponentsCanBeReused() {
+        components.add(3);
+        components.addTo(4, 3);
+        components.addTo(5, 3);
+        components.clear();
+        assertEquals(-1, components.largest());
+        components.add(20);
+        components.add(21);
+        components.union(20, 21);
+        assertEquals(2, components.size(components.largest()));
+        components.add(4);
+        assertEquals(1, components.size(4));
+    }
+
+    /**
+     * Adds the open cells row by row, joining each to its open neighbours to
+     * the left and above, the way the generators do
+     *
+     * @param open which cells are open, indexed by x + y * WIDTH
+     */
+    private void join(boolean[] open) {
+        for (int c = 0; c < open.length; c++) {
+            if (!open[c]) {
+                continue;
+            }
+            boolean left = c % WIDTH > 0 && open[c - 1];
+            boolean up = c >= WIDTH && open[c - WIDTH];
+            if (left) {
+                components.addTo(c, components.find(c - 1));
+                if (up) {
+                    components.union(c, c - WIDTH);
+                }
+            } else if (up) {
+                components.addTo(c, components.find(c - WIDTH));
+            } else {
+                components.add(c);
+            }
+        }
+    }
+
+    private static boolean[] randomCells(long seed) {
+        Random rng = new Random(seed);
+        boolean[] open = new boolean[WIDTH * HEIGHT];
+        for (int c = 0; c < open.length; c++) {
+            open[c] = rng.nextInt(5) < 3;
+        }
+        return open;
+    }
+
+    /**
+     * Labels each open cell with the first cell of its component, found with
+     * a flood fill
+     *
+     * @param open which cells are open
+     * @return the label of each cell, -1 for cells that are not open
+     */
+    private static int[] floodFill(boolean[] open) {
+        int[] label = new int[open.length];
+        Arrays.fill(label, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int start = 0; start < open.length; start++) {
+            if (!open[start] || label[start] != -1) {
+                continue;
+            }
+            label[start] = start;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int c = queue.poll();
+                int x = c % WIDTH;
+                int[] next = {x > 0 ? c - 1 : -1, x < WIDTH - 1 ? c + 1 : -1, c - WIDTH, c + WIDTH};
+                for (int n : next) {
+                    if (n >= 0 && n < open.length && open[n] && label[n] == -1) {
+                        label[n] = start;
+                        queue.add(n);
+                    }
+                }
+            }
+        }
+        return label;
+    }
+}
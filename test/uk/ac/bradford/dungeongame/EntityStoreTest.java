@@ -0,0 +1,111 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+
+/**
+ * Checks that an EntityStore keeps every attribute of its entities together
+ * as it grows and as entities are swap-removed, and that an Entity view reads
+ * and changes its slot.
+ */
+class EntityStoreTest {
+
+    @Test
+    void newEntityMatchesANewEntity() {
+        EntityStore store = new EntityStore(1);
+        int i = store.add(30, 4, 5, EntityType.MONSTER);
+        Entity expected = new Entity(30, 4, 5, EntityType.MONSTER);
+        Entity actual = store.get(i);
+        assertEquals(expected.getX(), actual.getX());
+        assertEquals(expected.getY(), actual.getY());
+        assertEquals(expected.getHealth(), actual.getHealth());
+        assertEquals(expected.getMaxHealth(), actual.getMaxHealth());
+        assertEquals(expected.getDamage(), actual.getDamage());
+        assertEquals(expected.getArmour(), actual.getArmour());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(0, store.getAwakeTurn(i));
+    }
+
+    @Test
+    void removingMovesTheLastEntityIntoTheSlot() {
+        EntityStore store = new EntityStore(4);
+        for (int i = 0; i < 4; i++) {
+            store.add(10 + i, i, i, EntityType.MONSTER);
+            store.setDamage(i, 20 + i);
+        }
+        Entity slot = store.get(1);
+        store.remove(1);
+        assertEquals(3, store.size());
+        //the view now shows the entity that was last
+        assertEquals(3, slot.getX());
+        assertEquals(13, slot.getMaxHealth());
+        assertEquals(23, slot.getDamage());
+        //removing the last slot moves nothing
+        store.remove(2);
+        assertEquals(2, store.size());
+        assertEquals(0, store.getX(0));
+        assertEquals(3, store.getX(1));
+    }
+
+    @Test
+    void viewChangesTheStore() {
+        EntityStore store = new EntityStore(2);
+        int i = store.add(50, 1, 1, EntityType.MONSTER);
+        Entity e = store.get(i);
+        e.setPosition(7, 8);
+        e.changeHealth(-20);
+        e.changeHealth(100);
+        e.changeDamage(15);
+        e.changeArmour(3);
+        e.changeArmour(-10);
+        assertEquals(7, store.getX(i));
+        assertEquals(8, store.getY(i));
+        assertEquals(50, store.getHealth(i));
+        assertEquals(15, store.getDamage(i));
+        assertEquals(0, store.getArmour(i));
+    }
+
+    @Test
+    void matchesAListAfterRandomChanges() {
+        Random rng = new Random(7);
+        //start small so the store grows several times
+        EntityStore store = new EntityStore(0);
+        List<long[]> expected = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            if (expected.isEmpty() || rng.nextInt(3) != 0) {
+                int n = rng.nextInt(1000);
+                int i = store.add(n + 1, n, n * 2, EntityType.MONSTER);
+                store.setDamage(i, n * 3);
+                store.changeArmour(i, n * 4);
+                store.setAwakeTurn(i, n * 5L);
+                expected.add(new long[] {n});
+            } else {
+                int i = rng.nextInt(expected.size());
+                store.remove(i);
+                //the same swap-remove on the list
+                long[] last = expected.remove(expected.size() - 1);
+                if (i < expected.size()) {
+                    expected.set(i, last);
+                }
+            }
+            assertEquals(expected.size(), store.size(), "step " + step);
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            int n = (int) expected.get(i)[0];
+            String entity = "entity " + i;
+            assertEquals(n + 1, store.getMaxHealth(i), entity);
+            assertEquals(n + 1, store.getHealth(i), entity);
+            assertEquals(n, store.getX(i), entity);
+            assertEquals(n * 2, store.getY(i), entity);
+            assertEquals(n * 3, store.getDamage(i), entity);
+            assertEquals(n * 4, store.getArmour(i), entity);
+            assertEquals(n * 5L, store.getAwakeTurn(i), entity);
+            assertEquals(EntityType.MONSTER, store.getType(i), entity);
+        }
+    }
+}
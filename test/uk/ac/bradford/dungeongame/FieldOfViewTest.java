@@ -0,0 +1,147 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks that a FieldOfView is symmetric between open cells, that walls block
+ * sight and are seen themselves, that nothing beyond the radius is seen, and
+ * that explored cells are kept for a level and forgotten for the next one.
+ */
+class FieldOfViewTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+    private static final int RADIUS = 8;
+
+    private final FieldOfView sight = new FieldOfView(WIDTH, HEIGHT, RADIUS);
+
+    @Test
+    void openCellsSeeEachOther() {
+        for (long seed = 1; seed <= 3; seed++) {
+            TileMap tiles = caves(seed);
+            //what every open cell can see
+            boolean[][] sees = new boolean[WIDTH * HEIGHT][];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    if (tiles.get(x, y) != TileType.WALL) {
+                        sight.compute(tiles, x, y);
+                        sees[x + y * WIDTH] = visibleCells();
+                    }
+                }
+            }
+            for (int a = 0; a < sees.length; a++) {
+                for (int b = a + 1; b < sees.length && sees[a] != null; b++) {
+                    if (sees[b] != null) {
+                        assertEquals(sees[a][b], sees[b][a], "seed " + seed + ", cells " + a + " and " + b);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void openRoomIsSeenOutToTheRadius() {
+        TileMap tiles = room();
+        sight.compute(tiles, 20, 15);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int dx = x - 20;
+                int dy = y - 15;
+                boolean inRange = dx * dx + dy * dy <= RADIUS * RADIUS + RADIUS;
+                assertEquals(inRange, sight.isVisible(x, y), x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void wallsBlockSightAndAreSeen() {
+        TileMap tiles = room();
+        //a wall across the room two cells above the player
+        for (int x = 10; x <= 30; x++) {
+            tiles.set(x, 13, TileType.WALL);
+        }
+        sight.compute(tiles, 20, 15);
+        for (int x = 16; x <= 24; x++) {
+            assertTrue(sight.isVisible(x, 13), "wall at " + x);
+            for (int y = 7; y < 13; y++) {
+                assertFalse(sight.isVisible(x, y), "behind the wall at " + x + "," + y);
+            }
+        }
+        //the other way is still open
+        assertTrue(sight.isVisible(20, 15 + RADIUS));
+    }
+
+    @Test
+    void exploredCellsBelongToALevel() {
+        TileMap tiles = room();
+        sight.compute(tiles, 5, 5);
+        FieldOfView snapshot = sight.snapshot();
+        sight.compute(tiles, 34, 24);
+        //cells seen from both places are explored, but the snapshot only has
+        //the first
+        assertTrue(sight.isExplored(5, 5));
+        assertTrue(sight.isExplored(34, 24));
+        assertTrue(snapshot.isExplored(5, 5));
+        assertFalse(snapshot.isExplored(34, 24));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.compute(tiles, 5, 5));
+        //a snapshot of the same level keeps the explored cells
+        sight.compute(tiles.snapshot(), 34, 24);
+        assertTrue(sight.isExplored(5, 5));
+        //a different level forgets them
+        sight.compute(room(), 34, 24);
+        assertFalse(sight.isExplored(5, 5));
+        assertTrue(sight.isExplored(34, 24));
+    }
+
+    /**
+     * Returns which cells are visible, indexed by x + y * WIDTH
+     */
+    private boolean[] visibleCells() {
+        boolean[] cells = new boolean[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                cells[x + y * WIDTH] = sight.isVisible(x, y);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Makes a level with no walls inside its border
+     */
+    private static TileMap room() {
+        TileMap tiles = new TileMap(WIDTH, HEIGHT);
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            for (int x = 1; x < WIDTH - 1; x++) {
+                tiles.set(x, y, TileType.FLOOR);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Makes a level of random walls inside a border of walls
+     *
+     * @param seed the seed for the walls
+     * @return the level
+     */
+    private static TileMap caves(long seed) {
+        Random rng = new Random(seed);
+        TileMap tiles = room();
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            for (int x = 1; x < WIDTH - 1; x++) {
+                if (rng.nextInt(4) == 0) {
+                    tiles.set(x, y, TileType.WALL);
+                }
+            }
+        }
+        return tiles;
+    }
+}
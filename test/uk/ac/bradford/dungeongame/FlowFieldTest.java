@@ -0,0 +1,271 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks the distances in a FlowField against a plain breadth first search,
+ * that stepping downhill always gets one step closer to the source, and that
+ * a search stopped once its targets were reached carries on to give the same
+ * distances as one that was never stopped.
+ */
+class FlowFieldTest {
+
+    private static final int WIDTH = 45;
+    private static final int HEIGHT = 33;
+
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+
+    @Test
+    void wholeLevelMatchesBreadthFirstSearch() {
+        FlowField field = new FlowField(WIDTH, HEIGHT);
+        for (long seed = 1; seed <= 10; seed++) {
+            TileMap tiles = caves(seed);
+            Random rng = new Random(seed);
+            int[] source = openCell(tiles, rng);
+            field.compute(tiles, source[0], source[1], null);
+            assertSameDistances(distances(tiles, source[0], source[1]), field, "seed " + seed);
+        }
+    }
+
+    @Test
+    void stepsDownhillReachTheSource() {
+        TileMap tiles = caves(4);
+        FlowField field = new FlowField(WIDTH, HEIGHT);
+        int[] source = openCell(tiles, new Random(4));
+        field.compute(tiles, source[0], source[1], null);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (tiles.get(x, y) == TileType.WALL) {
+                    continue;
+                }
+                int d = field.getDistance(x, y);
+                int direction = field.downhill(x, y);
+                if (d == FlowField.UNREACHABLE || d == 0) {
+                    assertEquals(-1, direction, x + "," + y);
+                } else {
+                    int next = field.getDistance(x + DIRECTION_X[direction], y + DIRECTION_Y[direction]);
+                    assertEquals(d - 1, next, x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void changedTilesArePatchedIn() {
+        TileMap tiles = caves(6);
+        FlowField field = new FlowField(WIDTH, HEIGHT);
+        Random rng = new Random(6);
+        int[] source = openCell(tiles, rng);
+        field.compute(tiles, source[0], source[1], null);
+        for (int k = 0; k < 50; k++) {
+            int x = 1 + rng.nextInt(WIDTH - 2);
+            int y = 1 + rng.nextInt(HEIGHT - 2);
+            if (x == source[0] && y == source[1]) {
+                continue;
+            }
+            tiles.set(x, y, tiles.get(x, y) == TileType.WALL ? TileType.FLOOR : TileType.WALL);
+            field.tileChanged(tiles, x, y);
+            field.compute(tiles, source[0], source[1], null);
+            assertSameDistances(distances(tiles, source[0], source[1]), field, "change " + k);
+        }
+    }
+
+    @Test
+    void stoppedSearchCarriesOnToFurtherTargets() {
+        TileMap tiles = caves(2);
+        FlowField field = new FlowField(WIDTH, HEIGHT);
+        int[] source = openCell(tiles, new Random(2));
+        int[] expected = distances(tiles, source[0], source[1]);
+        //a target next to the source, then targets further and further out
+        int furthest = 0;
+        for (int d : expected) {
+            if (d != FlowField.UNREACHABLE) {
+                furthest = Math.max(furthest, d);
+            }
+        }
+        assertTrue(furthest > 10, "the source is shut in");
+        for (int reach = 1; reach <= furthest; reach += 3) {
+            EntityStore targets = targetsAt(expected, reach);
+            field.compute(tiles, source[0], source[1], targets);
+            assertReachedAtLeast(expected, field, reach, "reach " + reach);
+            if (reach == 1) {
+                //the first search stopped long before the whole level
+                assertEquals(FlowField.UNREACHABLE, field.getDistance(
+                        cellAt(expected, furthest) % WIDTH, cellAt(expected, furthest) / WIDTH));
+            }
+        }
+    }
+
+    @Test
+    void stoppedSearchStartsAgainWhenACellCloses() {
+        TileMap tiles = caves(3);
+        FlowField field = new FlowField(WIDTH, HEIGHT);
+        Random rng = new Random(3);
+        int[] source = openCell(tiles, rng);
+        int[] before = distances(tiles, source[0], source[1]);
+        field.compute(tiles, source[0], source[1], targetsAt(before, 2));
+        //close the cells next to the source, except the one above it, which
+        //changes the distances the paused search has not reached yet
+        for (int d = 1; d < 4; d++) {
+            int x = source[0] + DIRECTION_X[d];
+            int y = source[1] + DIRECTION_Y[d];
+            if (tiles.get(x, y) != TileType.WALL) {
+                tiles.set(x, y, TileType.WALL);
+                field.tileChanged(tiles, x, y);
+            }
+        }
+        field.compute(tiles, source[0], source[1], null);
+        assertSameDistances(distances(tiles, source[0], source[1]), field, "after closing");
+    }
+
+    @Test
+    void stoppedSearchStartsAgainWhenTheSourceMoves() {
+        TileMap tiles = caves(5);
+        FlowField field = new FlowField(WIDTH, HEIGHT);
+        Random rng = new Random(5);
+        int[] first = openCell(tiles, rng);
+        field.compute(tiles, first[0], first[1], targetsAt(distances(tiles, first[0], first[1]), 3));
+        int[] second = openCell(tiles, rng);
+        int[] expected = distances(tiles, second[0], second[1]);
+        field.compute(tiles, second[0], second[1], targetsAt(expected, 6));
+        assertReachedAtLeast(expected, field, 6, "after moving");
+    }
+
+    /**
+     * Makes a store with a target on every cell at a distance from the source
+     *
+     * @param distance the distances from the source, indexed by x + y * WIDTH
+     * @param reach the distance to put the targets at
+     * @return the targets
+     */
+    private static EntityStore targetsAt(int[] distance, int reach) {
+        EntityStore targets = new EntityStore(4);
+        for (int c = 0; c < distance.length; c++) {
+            if (distance[c] == reach) {
+                targets.add(1, c % WIDTH, c / WIDTH, EntityType.MONSTER);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Finds the first cell at a distance from the source
+     *
+     * @param distance the distances from the source, indexed by x + y * WIDTH
+     * @param reach the distance to look for
+     * @return the cell, as x + y * WIDTH
+     */
+    private static int cellAt(int[] distance, int reach) {
+        for (int c = 0; c < distance.length; c++) {
+            if (distance[c] == reach) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("No cell at distance " + reach);
+    }
+
+    /**
+     * Checks that every cell up to a distance from the source has its right
+     * distance, and that any cell further out is either right or not reached
+     */
+    private static void assertReachedAtLeast(int[] expected, FlowField field, int reach, String message) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int d = expected[x + y * WIDTH];
+                int actual = field.getDistance(x, y);
+                if (d > reach && actual == FlowField.UNREACHABLE) {
+                    continue;
+                }
+                assertEquals(d, actual, message + ", cell " + x + "," + y);
+            }
+        }
+    }
+
+    /**
+     * Makes a level of random walls inside a border of walls, with about a
+     * third of the cells closed so some areas are cut off
+     *
+     * @param seed the seed for the walls
+     * @return the level
+     */
+    private static TileMap caves(long seed) {
+        Random rng = new Random(seed);
+        TileMap tiles = new TileMap(WIDTH, HEIGHT);
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            for (int x = 1; x < WIDTH - 1; x++) {
+                if (rng.nextInt(3) != 0) {
+                    tiles.set(x, y, TileType.FLOOR);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Picks a random cell that is not a wall
+     *
+     * @param tiles the level
+     * @param rng the random numbers to pick with
+     * @return the X and Y co-ordinates of the cell
+     */
+    private static int[] openCell(TileMap tiles, Random rng) {
+        while (true) {
+            int x = rng.nextInt(WIDTH);
+            int y = rng.nextInt(HEIGHT);
+            if (tiles.get(x, y) != TileType.WALL) {
+                return new int[] {x, y};
+            }
+        }
+    }
+
+    /**
+     * Finds the distance from every cell to a source with a plain breadth
+     * first search
+     *
+     * @param tiles the level
+     * @param sourceX the X co-ordinate of the source
+     * @param sourceY the Y co-ordinate of the source
+     * @return the distances indexed by x + y * WIDTH, UNREACHABLE for cells the
+     * search does not reach
+     */
+    private static int[] distances(TileMap tiles, int sourceX, int sourceY) {
+        int[] distance = new int[WIDTH * HEIGHT];
+        Arrays.fill(distance, FlowField.UNREACHABLE);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        distance[sourceX + sourceY * WIDTH] = 0;
+        queue.add(sourceX + sourceY * WIDTH);
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            int x = c % WIDTH;
+            int y = c / WIDTH;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DIRECTION_X[d];
+                int ny = y + DIRECTION_Y[d];
+                int n = nx + ny * WIDTH;
+                if (tiles.get(nx, ny) != TileType.WALL && distance[n] == FlowField.UNREACHABLE) {
+                    distance[n] = distance[c] + 1;
+                    queue.add(n);
+                }
+            }
+        }
+        return distance;
+    }
+
+    private static void assertSameDistances(int[] expected, FlowField field, String message) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(expected[x + y * WIDTH], field.getDistance(x, y),
+                        message + ", cell " + x + "," + y);
+            }
+        }
+    }
+}
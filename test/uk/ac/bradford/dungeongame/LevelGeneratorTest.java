@@ -0,0 +1,103 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks that the levels the engine makes from every LevelGenerator can be
+ * finished: the border is wall, every open cell can be reached from every
+ * other, and there is exactly one set of stairs.
+ */
+class LevelGeneratorTest {
+
+    private static final int SEEDS = 20;
+
+    @Test
+    void noiseLevelsAreConnected() {
+        assertConnected(() -> new NoiseGenerator(10));
+    }
+
+    @Test
+    void arenaLevelsAreConnected() {
+        assertConnected(() -> new NoiseGenerator(0));
+    }
+
+    @Test
+    void roomsLevelsAreConnected() {
+        assertConnected(RoomsGenerator::new);
+    }
+
+    @Test
+    void caveLevelsAreConnected() {
+        assertConnected(CaveGenerator::new);
+    }
+
+    @Test
+    void drunkardLevelsAreConnected() {
+        assertConnected(DrunkardGenerator::new);
+    }
+
+    /**
+     * Generates levels with a generator for a range of seeds, at the normal
+     * size and a larger one, and checks each of them
+     *
+     * @param generators makes a new generator for each engine
+     */
+    private static void assertConnected(Supplier<LevelGenerator> generators) {
+        int[][] sizes = {{GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT}, {100, 70}};
+        for (int[] size : sizes) {
+            for (long seed = 1; seed <= SEEDS; seed++) {
+                GameEngine engine = new GameEngine(new HeadlessView(), seed, size[0], size[1]);
+                engine.setGenerator(1, 40, generators.get());
+                assertConnected(engine.generateLevel(), "seed " + seed + ", " + size[0] + "x" + size[1]);
+            }
+        }
+    }
+
+    private static void assertConnected(TileMap tiles, String level) {
+        int width = tiles.getWidth();
+        int height = tiles.getHeight();
+        int open = 0;
+        int stairs = 0;
+        int start = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                TileType tile = tiles.get(x, y);
+                if (x == 0 || y == 0 || x == width - 1 || y == height - 1) {
+                    assertEquals(TileType.WALL, tile, level + ", border cell " + x + "," + y);
+                }
+                if (tile != TileType.WALL) {
+                    open++;
+                    start = x + y * width;
+                }
+                if (tile == TileType.STAIRS) {
+                    stairs++;
+                }
+            }
+        }
+        assertTrue(open > 1, level + " has no room to play in");
+        assertEquals(1, stairs, level);
+        //flood fill from one open cell, which should reach all the others
+        boolean[] seen = new boolean[width * height];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        seen[start] = true;
+        queue.add(start);
+        int reached = 0;
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            reached++;
+            for (int n : new int[] {c - width, c + 1, c + width, c - 1}) {
+                if (!seen[n] && tiles.get(n % width, n / width) != TileType.WALL) {
+                    seen[n] = true;
+                    queue.add(n);
+                }
+            }
+        }
+        assertEquals(open, reached, level + ": open cells cut off from the rest");
+    }
+}
@@ -0,0 +1,133 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks that levels put in a LevelStore read back as they were stored, after
+ * the store grows and after it is closed and used again.
+ */
+class LevelStoreTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    private final LevelStore store = new LevelStore(WIDTH, HEIGHT, 2);
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void storedLevelReadsBack() {
+        TileMap tiles = level(3);
+        EntityStore monsters = monsters(2, 3);
+        store.put(3, tiles, monsters, 45, 46);
+        assertTrue(store.contains(3));
+        assertFalse(store.contains(2));
+        assertSameTiles(tiles, store.getTiles(3));
+        assertSameMonsters(monsters, store.getMonsters(3));
+        assertEquals(45, store.getEntryCell(3));
+        assertEquals(46, store.getExitCell(3));
+    }
+
+    @Test
+    void growingKeepsTheLevelsAlreadyStored() {
+        TileMap first = level(1);
+        EntityStore few = monsters(1, 1);
+        store.put(1, first, few, 41, 42);
+        //more monsters than the records have room for
+        TileMap second = level(2);
+        EntityStore many = monsters(9, 2);
+        store.put(2, second, many, 43, 44);
+        assertSameTiles(first, store.getTiles(1));
+        assertSameMonsters(few, store.getMonsters(1));
+        assertEquals(42, store.getExitCell(1));
+        assertSameTiles(second, store.getTiles(2));
+        assertSameMonsters(many, store.getMonsters(2));
+    }
+
+    @Test
+    void closedStoreForgetsItsLevelsAndCanBeUsedAgain() {
+        store.put(1, level(1), monsters(2, 1), 41, 42);
+        store.put(7, level(7), monsters(2, 7), 41, 42);
+        store.close();
+        assertFalse(store.contains(1));
+        assertFalse(store.contains(7));
+        TileMap tiles = level(4);
+        EntityStore monsters = monsters(2, 4);
+        store.put(1, tiles, monsters, 50, 51);
+        assertTrue(store.contains(1));
+        assertFalse(store.contains(7));
+        assertSameTiles(tiles, store.getTiles(1));
+        assertSameMonsters(monsters, store.getMonsters(1));
+    }
+
+    /**
+     * Makes a level with a pattern of every TileType that depends on a number
+     *
+     * @param n the number the pattern depends on
+     * @return the level
+     */
+    private static TileMap level(int n) {
+        TileMap tiles = new TileMap(WIDTH, HEIGHT);
+        TileType[] types = TileType.values();
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            for (int x = 1; x < WIDTH - 1; x++) {
+                tiles.set(x, y, types[(x * 7 + y * 3 + n) % types.length]);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Makes a store of monsters with attributes that depend on a number
+     *
+     * @param count the number of monsters
+     * @param n the number the attributes depend on
+     * @return the monsters
+     */
+    private static EntityStore monsters(int count, int n) {
+        EntityStore monsters = new EntityStore(count);
+        for (int i = 0; i < count; i++) {
+            int m = monsters.add(50 + n, 1 + i, 1 + n, EntityType.MONSTER);
+            monsters.changeHealth(m, -i);
+            monsters.setDamage(m, 10 + i);
+            monsters.changeArmour(m, n);
+            monsters.setAwakeTurn(m, 100L * n + i);
+        }
+        return monsters;
+    }
+
+    private static void assertSameTiles(TileMap expected, TileMap actual) {
+        byte[] a = new byte[WIDTH];
+        byte[] b = new byte[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            expected.getRow(y, a);
+            actual.getRow(y, b);
+            assertArrayEquals(a, b, "row " + y);
+        }
+    }
+
+    private static void assertSameMonsters(EntityStore expected, EntityStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String monster = "monster " + i;
+            assertEquals(expected.getX(i), actual.getX(i), monster);
+            assertEquals(expected.getY(i), actual.getY(i), monster);
+            assertEquals(expected.getHealth(i), actual.getHealth(i), monster);
+            assertEquals(expected.getMaxHealth(i), actual.getMaxHealth(i), monster);
+            assertEquals(expected.getDamage(i), actual.getDamage(i), monster);
+            assertEquals(expected.getArmour(i), actual.getArmour(i), monster);
+            assertEquals(expected.getAwakeTurn(i), actual.getAwakeTurn(i), monster);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.Entity.EntityType;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks that a MonsterPhase with enough awake monsters to split the stripes
+ * across threads makes exactly the same moves and attacks on one worker
+ * thread as on several, and keeps the occupancy grid in step with the
+ * monsters.
+ */
+class MonsterPhaseTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 130;
+    private static final int MONSTERS = 3000;
+    private static final int TURNS = 30;
+
+    @Test
+    void oneThreadAndManyThreadsMakeTheSameMoves() {
+        List<int[]> serial = play(1);
+        List<int[]> parallel = play(4);
+        assertEquals(serial.size(), parallel.size());
+        for (int t = 0; t < serial.size(); t++) {
+            assertArrayEquals(serial.get(t), parallel.get(t), "turn " + t);
+        }
+    }
+
+    /**
+     * Plays a number of turns of monsters chasing a player that does not move,
+     * running each turn's MonsterPhase in a pool of threads
+     *
+     * @param threads the number of threads in the pool
+     * @return for each turn, the moves made followed by the position of every
+     * monster and whether it attacked
+     */
+    private static List<int[]> play(int threads) {
+        Random rng = new Random(17);
+        TileMap tiles = new TileMap(WIDTH, HEIGHT);
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            for (int x = 1; x < WIDTH - 1; x++) {
+                if (rng.nextInt(4) != 0) {
+                    tiles.set(x, y, TileType.FLOOR);
+                }
+            }
+        }
+        int playerX = WIDTH / 2;
+        int playerY = HEIGHT / 2;
+        tiles.set(playerX, playerY, TileType.FLOOR);
+        OccupancyGrid occupancy = new OccupancyGrid(WIDTH, HEIGHT);
+        occupancy.set(playerX, playerY, OccupancyGrid.PLAYER);
+        EntityStore monsters = new EntityStore(MONSTERS);
+        while (monsters.size() < MONSTERS) {
+            int x = rng.nextInt(WIDTH);
+            int y = rng.nextInt(HEIGHT);
+            if (tiles.get(x, y) != TileType.WALL && occupancy.get(x, y) == OccupancyGrid.EMPTY) {
+                int i = monsters.add(10, x, y, EntityType.MONSTER);
+                occupancy.set(x, y, OccupancyGrid.monsterId(i));
+            }
+        }
+        ActiveSet awake = new ActiveSet();
+        FlowField flow = new FlowField(WIDTH, HEIGHT);
+        FieldOfView sight = new FieldOfView(WIDTH, HEIGHT, 40);
+        MonsterPhase phase = new MonsterPhase(WIDTH, HEIGHT);
+        List<int[]> turns = new ArrayList<>();
+        boolean crossedStripes = false;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int t = 0; t < TURNS; t++) {
+                awake.all(monsters.size());
+                assertTrue(awake.size() >= MonsterPhase.PARALLEL_THRESHOLD);
+                sight.compute(tiles, playerX, playerY);
+                flow.compute(tiles, playerX, playerY, monsters, awake, sight);
+                long turnSeed = t * 31L + 5;
+                pool.submit(() -> phase.run(tiles, occupancy, monsters, awake, flow, sight, turnSeed))
+                        .join();
+                int[] turn = new int[phase.getMoveCount() * 2 + monsters.size() * 3];
+                int k = 0;
+                for (int m = 0; m < phase.getMoveCount(); m++) {
+                    turn[k++] = phase.getMoveFrom(m);
+                    turn[k++] = phase.getMoveTo(m);
+                    crossedStripes |= phase.getMoveFrom(m) / WIDTH >> MonsterPhase.STRIPE_SHIFT
+                            != phase.getMoveTo(m) / WIDTH >> MonsterPhase.STRIPE_SHIFT;
+                }
+                for (int i = 0; i < monsters.size(); i++) {
+                    turn[k++] = monsters.getX(i);
+                    turn[k++] = monsters.getY(i);
+                    turn[k++] = phase.attacked(i) ? 1 : 0;
+                    assertEquals(OccupancyGrid.monsterId(i), occupancy.get(monsters.getX(i), monsters.getY(i)),
+                            "turn " + t + ", monster " + i);
+                }
+                turns.add(turn);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(crossedStripes, "no monster moved into another stripe");
+        return turns;
+    }
+}
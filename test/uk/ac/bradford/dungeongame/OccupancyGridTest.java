@@ -0,0 +1,75 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the OccupancyGrid on its own, and that the engine keeps it in step
+ * with the player and the monsters while monsters move and die. A dying
+ * monster is swap-removed from its EntityStore, so the monster moved into its
+ * slot must get a new id in the grid.
+ */
+class OccupancyGridTest {
+
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+
+    @Test
+    void moveCarriesTheIdAndEmptiesTheOldCell() {
+        OccupancyGrid grid = new OccupancyGrid(10, 8);
+        grid.set(2, 3, OccupancyGrid.monsterId(4));
+        grid.set(5, 5, OccupancyGrid.PLAYER);
+        grid.move(2, 3, 2, 4);
+        assertEquals(OccupancyGrid.EMPTY, grid.get(2, 3));
+        assertEquals(4, OccupancyGrid.monsterIndex(grid.get(2, 4)));
+        assertEquals(OccupancyGrid.PLAYER, grid.get(5, 5));
+        grid.clear();
+        assertEquals(OccupancyGrid.EMPTY, grid.get(2, 4));
+        assertEquals(OccupancyGrid.EMPTY, grid.get(5, 5));
+    }
+
+    @Test
+    void gridFollowsMonstersAsTheyMoveAndDie() {
+        GameEngine engine = new GameEngine(new HeadlessView(), 21, 40, 30);
+        engine.loadLevel(300);
+        Entity player = engine.getPlayer();
+        //every hit kills, so monsters keep being removed
+        player.changeDamage(1000);
+        int start = engine.getMonsters().size();
+        for (int t = 0; t < 400; t++) {
+            player.changeHealth(player.getMaxHealth());
+            int d = (t / 5 + t * t) & 3;
+            engine.movePlayer(DIRECTION_X[d], DIRECTION_Y[d]);
+            engine.doTurn();
+            assertConsistent(engine, 40, 30, t);
+        }
+        assertTrue(engine.getMonsters().size() < start, "no monster died");
+    }
+
+    /**
+     * Checks that every monster's cell holds its current slot, the player's
+     * cell holds PLAYER, and no other cell holds anything
+     */
+    private static void assertConsistent(GameEngine engine, int width, int height, int t) {
+        OccupancyGrid grid = engine.getOccupancy();
+        EntityStore monsters = engine.getMonsters();
+        Entity player = engine.getPlayer();
+        String turn = "turn " + t;
+        assertEquals(OccupancyGrid.PLAYER, grid.get(player.getX(), player.getY()), turn);
+        for (int i = 0; i < monsters.size(); i++) {
+            assertEquals(OccupancyGrid.monsterId(i), grid.get(monsters.getX(i), monsters.getY(i)),
+                    turn + ", monster " + i);
+        }
+        int taken = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (grid.get(x, y) != OccupancyGrid.EMPTY) {
+                    taken++;
+                }
+            }
+        }
+        assertEquals(monsters.size() + 1, taken, turn);
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that generating the next level in the background plays out the same
+ * game as generating each level when it is reached, and that a level waiting
+ * to be generated is cancelled when the game it was for goes away.
+ */
+class PregenerationTest {
+
+    /**
+     * The number of turns each game is played for
+     */
+    private static final int TURNS = 3000;
+
+    @Test
+    void backgroundLevelsPlayTheSameGame() {
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        try {
+            int deepest = 1;
+            for (long seed = 1; seed <= 8; seed++) {
+                GameEngine expected = play(seed, null);
+                deepest = Math.max(deepest, expected.getDepth());
+                assertSameGame(expected, play(seed, Runnable::run), seed);
+                assertSameGame(expected, play(seed, background), seed);
+            }
+            assertTrue(deepest > 2, "no game went down more than once");
+        } finally {
+            background.shutdown();
+        }
+    }
+
+    @Test
+    void levelWaitingToBeGeneratedIsCancelled() {
+        //an executor that never runs anything, so the level never starts
+        List<Runnable> waiting = new ArrayList<>();
+        GameEngine engine = new GameEngine(new HeadlessView(), 9, GameEngine.DUNGEON_WIDTH,
+                GameEngine.DUNGEON_HEIGHT, waiting::add);
+        assertEquals(1, waiting.size());
+        //starting again throws the old game away, and queues the next level
+        //of the new one
+        engine.startGame();
+        assertEquals(2, waiting.size());
+        assertTrue(((Future<?>) waiting.get(0)).isCancelled());
+        assertFalse(((Future<?>) waiting.get(1)).isCancelled());
+    }
+
+    /**
+     * Plays a game with a ScriptedPlayer for a number of turns, or until it
+     * ends
+     *
+     * @param seed the seed of the game
+     * @param pregenerator the pregenerator passed to the engine, or null
+     * @return the engine after the game
+     */
+    private static GameEngine play(long seed, Executor pregenerator) {
+        ScriptedPlayer bot = new ScriptedPlayer(~seed);
+        GameEngine engine = new GameEngine(bot, seed, GameEngine.DUNGEON_WIDTH,
+                GameEngine.DUNGEON_HEIGHT, pregenerator);
+        for (int t = 0; t < TURNS && engine.getState() == GameEngine.GameState.PLAYING; t++) {
+            bot.playTurn(engine);
+        }
+        return engine;
+    }
+
+    private static void assertSameGame(GameEngine expected, GameEngine actual, long seed) {
+        String game = "seed " + seed;
+        assertEquals(expected.getState(), actual.getState(), game);
+        assertEquals(expected.getDepth(), actual.getDepth(), game);
+        assertEquals(expected.getPlayer().getX(), actual.getPlayer().getX(), game);
+        assertEquals(expected.getPlayer().getY(), actual.getPlayer().getY(), game);
+        assertEquals(expected.getPlayer().getHealth(), actual.getPlayer().getHealth(), game);
+    }
+}
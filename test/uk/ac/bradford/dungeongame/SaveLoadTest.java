@@ -0,0 +1,234 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks that a game saved and loaded again carries on exactly as the game
+ * it was saved from does, turn for turn.
+ */
+class SaveLoadTest {
+
+    /**
+     * The X and Y steps for the four directions
+     */
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+
+    /**
+     * The number of turns played before saving, and after loading
+     */
+    private static final int TURNS_BEFORE = 40;
+    private static final int TURNS_AFTER = 300;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A HeadlessView that keeps the last frame it was given
+     */
+    static class CapturingView extends HeadlessView {
+
+        FrameSnapshot frame;
+
+        @Override
+        public void updateDisplay(FrameSnapshot frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public boolean wantsFrames() {
+            return true;
+        }
+    }
+
+    @Test
+    void loadedGameCarriesOnLikeTheOriginal() throws IOException {
+        CapturingView view = new CapturingView();
+        GameEngine original = new GameEngine(view, 42);
+        checkCarriesOn(original, view, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT);
+    }
+
+    @Test
+    void sleepingMonstersCarryOnLikeTheOriginal() throws IOException {
+        //a level big enough that most of its monsters are asleep
+        CapturingView view = new CapturingView();
+        GameEngine original = new GameEngine(view, 7, 128, 128);
+        original.loadLevel(600);
+        checkCarriesOn(original, view, 128, 128);
+    }
+
+    @Test
+    void levelsLeftAreLoadedAsTheyWereLeft() throws IOException {
+        //open arenas, so the player can walk to a chest and then the stairs
+        CapturingView view = new CapturingView();
+        GameEngine original = new GameEngine(view, 11);
+        original.setGenerator(1, 2, new NoiseGenerator(0));
+        original.startGame();
+        int chest = walkTo(original, view, TileType.CHEST);
+        walkTo(original, view, TileType.STAIRS);
+        assertEquals(2, original.getDepth());
+        Path file = dir.resolve("deeper.sav");
+        original.save(file);
+        CapturingView loadedView = new CapturingView();
+        GameEngine loaded = new GameEngine(loadedView, 1);
+        loaded.setGenerator(1, 2, new NoiseGenerator(0));
+        loaded.load(file);
+        //the first level comes back with its chest opened and its monsters
+        //where they were left
+        assertTrue(original.ascendLevel());
+        assertTrue(loaded.ascendLevel());
+        assertEquals(1, loaded.getDepth());
+        TileMap tiles = loadedView.frame.getTiles();
+        assertEquals(TileType.FLOOR, tiles.get(chest % tiles.getWidth(), chest / tiles.getWidth()));
+        assertSameTiles(view.frame.getTiles(), tiles);
+        assertSame(original, view.frame, loaded, loadedView.frame, 0);
+        for (int t = 0; t < TURNS_AFTER; t++) {
+            play(original, t);
+            play(loaded, t);
+            assertSame(original, view.frame, loaded, loadedView.frame, t);
+        }
+    }
+
+    @Test
+    void depthPastTheLastLevelIsRejected() throws IOException {
+        GameEngine original = new GameEngine(new HeadlessView(), 5);
+        Path file = dir.resolve("deep.sav");
+        original.save(file);
+        //the depth follows the header and the level size. the CRC is worked
+        //out again so only the depth is wrong
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        bytes.putInt(SaveFile.HEADER_BYTES + 4, 41);
+        int end = bytes.limit() - SaveFile.CRC_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), 0, end);
+        bytes.putInt(end, (int) crc.getValue());
+        Files.write(file, bytes.array());
+        GameEngine loaded = new GameEngine(new HeadlessView(), 6);
+        assertThrows(IOException.class, () -> loaded.load(file));
+        assertEquals(1, loaded.getDepth());
+    }
+
+    /**
+     * Plays a game for a while, saves it, loads it into another engine, and
+     * then plays both with the same moves, checking they stay the same
+     *
+     * @param original the game to save, already started
+     * @param view the view of the original game
+     * @param width the width of the levels
+     * @param height the height of the levels
+     * @throws IOException if the game can not be saved or loaded
+     */
+    private void checkCarriesOn(GameEngine original, CapturingView view, int width, int height)
+            throws IOException {
+        for (int t = 0; t < TURNS_BEFORE; t++) {
+            play(original, t);
+        }
+        Path file = dir.resolve("game.sav");
+        original.save(file);
+        CapturingView loadedView = new CapturingView();
+        GameEngine loaded = new GameEngine(loadedView, 1, width, height);
+        loaded.load(file);
+        for (int t = TURNS_BEFORE; t < TURNS_BEFORE + TURNS_AFTER; t++) {
+            play(original, t);
+            play(loaded, t);
+            assertSame(original, view.frame, loaded, loadedView.frame, t);
+        }
+    }
+
+    /**
+     * Walks the player to the first tile of a type on the current level,
+     * playing a turn after each step, until the tile is opened (for a chest)
+     * or the player goes down (for the stairs). The player is healed first so
+     * the game lasts, and attacks any monster in the way.
+     *
+     * @param engine the game
+     * @param view the view of the game
+     * @param type the type of tile to walk to
+     * @return the packed cell (x + y * width) of the tile
+     */
+    private static int walkTo(GameEngine engine, CapturingView view, TileType type) {
+        TileMap tiles = view.frame.getTiles();
+        int cell = -1;
+        for (int c = 0; c < tiles.getWidth() * tiles.getHeight() && cell == -1; c++) {
+            if (tiles.get(c % tiles.getWidth(), c / tiles.getWidth()) == type) {
+                cell = c;
+            }
+        }
+        assertTrue(cell != -1, "no " + type + " on the level");
+        int x = cell % tiles.getWidth();
+        int y = cell / tiles.getWidth();
+        int depth = engine.getDepth();
+        Entity player = engine.getPlayer();
+        for (int step = 0; engine.getDepth() == depth && view.frame.getTiles().get(x, y) == type; step++) {
+            assertTrue(step < 500, "could not reach the " + type);
+            player.changeHealth(player.getMaxHealth());
+            int dx = Integer.signum(x - player.getX());
+            int dy = dx == 0 ? Integer.signum(y - player.getY()) : 0;
+            engine.movePlayer(dx, dy);
+            engine.doTurn();
+        }
+        return cell;
+    }
+
+    /**
+     * Plays one turn with a move that only depends on the turn number. The
+     * player is healed first so the game lasts.
+     *
+     * @param engine the game
+     * @param t the turn number
+     */
+    private static void play(GameEngine engine, int t) {
+        Entity player = engine.getPlayer();
+        player.changeHealth(player.getMaxHealth());
+        int d = (t / 6 + t * t) & 3;
+        engine.movePlayer(DIRECTION_X[d], DIRECTION_Y[d]);
+        engine.doTurn();
+    }
+
+    /**
+     * Checks that two levels have the same tiles
+     */
+    private static void assertSameTiles(TileMap expected, TileMap actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.get(x, y), actual.get(x, y), "tile " + x + "," + y);
+            }
+        }
+    }
+
+    /**
+     * Checks that two games are in the same state, using the last frame of
+     * each for the monsters
+     */
+    private static void assertSame(GameEngine expected, FrameSnapshot expectedFrame,
+            GameEngine actual, FrameSnapshot actualFrame, int t) {
+        String turn = "turn " + t;
+        assertEquals(expected.getState(), actual.getState(), turn);
+        assertEquals(expected.getDepth(), actual.getDepth(), turn);
+        Entity a = expected.getPlayer();
+        Entity b = actual.getPlayer();
+        assertEquals(a.getX(), b.getX(), turn);
+        assertEquals(a.getY(), b.getY(), turn);
+        assertEquals(a.getHealth(), b.getHealth(), turn);
+        assertEquals(a.getArmour(), b.getArmour(), turn);
+        assertEquals(a.getDamage(), b.getDamage(), turn);
+        assertEquals(expectedFrame.getMonsterCount(), actualFrame.getMonsterCount(), turn);
+        for (int i = 0; i < expectedFrame.getMonsterCount(); i++) {
+            String monster = turn + ", monster " + i;
+            assertEquals(expectedFrame.getMonsterX(i), actualFrame.getMonsterX(i), monster);
+            assertEquals(expectedFrame.getMonsterY(i), actualFrame.getMonsterY(i), monster);
+            assertEquals(expectedFrame.getMonsterHealth(i), actualFrame.getMonsterHealth(i), monster);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a SpawnIndex holds exactly the cells added and not removed, and
+ * that taking random cells hands each one out once.
+ */
+class SpawnIndexTest {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 15;
+
+    private final SpawnIndex index = new SpawnIndex(WIDTH, HEIGHT);
+
+    @Test
+    void addingTwiceKeepsOneCopy() {
+        index.add(7);
+        index.add(7);
+        index.add(30);
+        assertEquals(2, index.size());
+        assertTrue(index.contains(7));
+        assertTrue(index.contains(30));
+        assertFalse(index.contains(8));
+    }
+
+    @Test
+    void removingMovesTheLastCellIntoTheGap() {
+        index.add(1);
+        index.add(2);
+        index.add(3);
+        index.remove(1);
+        //the last cell now sits in the removed cell's slot, and can still be
+        //found and removed
+        assertFalse(index.contains(1));
+        assertTrue(index.contains(3));
+        index.remove(3);
+        assertEquals(1, index.size());
+        assertTrue(index.contains(2));
+        //removing a cell that is not there does nothing
+        index.remove(3);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void takeRandomHandsOutEveryCellOnce() {
+        Set<Integer> added = new HashSet<>();
+        for (int cell = 0; cell < WIDTH * HEIGHT; cell += 3) {
+            index.add(cell);
+            added.add(cell);
+        }
+        Random rng = new Random(5);
+        Set<Integer> taken = new HashSet<>();
+        for (int k = 0; k < added.size(); k++) {
+            int cell = index.takeRandom(rng);
+            assertTrue(added.contains(cell), "cell " + cell + " was never added");
+            assertTrue(taken.add(cell), "cell " + cell + " was taken twice");
+            assertFalse(index.contains(cell));
+        }
+        assertEquals(0, index.size());
+        assertEquals(-1, index.takeRandom(rng));
+    }
+
+    @Test
+    void matchesASetAfterRandomChanges() {
+        Random rng = new Random(11);
+        Set<Integer> expected = new HashSet<>();
+        for (int step = 0; step < 20000; step++) {
+            int cell = rng.nextInt(WIDTH * HEIGHT);
+            switch (rng.nextInt(3)) {
+                case 0:
+                    index.add(cell);
+                    expected.add(cell);
+                    break;
+                case 1:
+                    index.remove(cell);
+                    expected.remove(cell);
+                    break;
+                default:
+                    int taken = index.takeRandom(rng);
+                    assertEquals(expected.isEmpty(), taken == -1);
+                    expected.remove(taken);
+            }
+            assertEquals(expected.size(), index.size(), "step " + step);
+        }
+        for (int cell = 0; cell < WIDTH * HEIGHT; cell++) {
+            assertEquals(expected.contains(cell), index.contains(cell), "cell " + cell);
+        }
+    }
+
+    @Test
+    void clearedIndexCanBeFilledAgain() {
+        for (int cell = 0; cell < 50; cell++) {
+            index.add(cell);
+        }
+        index.clear();
+        assertEquals(0, index.size());
+        for (int cell = 0; cell < 50; cell++) {
+            assertFalse(index.contains(cell), "cell " + cell);
+        }
+        index.add(49);
+        index.add(0);
+        assertEquals(2, index.size());
+        assertTrue(index.contains(49));
+        index.remove(49);
+        assertTrue(index.contains(0));
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,103 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks going down and climbing back up the stairs. The first two levels
+ * are open arenas with no monsters on the first, so the player can walk
+ * straight to the stairs.
+ */
+class StairsTest {
+
+    private final HeadlessView view = new HeadlessView();
+    private GameEngine engine;
+    private TileMap level;
+
+    @BeforeEach
+    void setUp() {
+        engine = new GameEngine(view, 3);
+        engine.setGenerator(1, 2, new NoiseGenerator(0));
+        engine.startGame();
+        engine.loadLevel(0);
+        level = engine.generateLevel();
+    }
+
+    @Test
+    void walkingOntoTheStairsGoesDown() {
+        walkToStairs();
+        assertEquals(2, engine.getDepth());
+    }
+
+    @Test
+    void goingDownSendsOneFrame() {
+        walkToStairs();
+        //climb back up and step off the stairs, so stepping back onto them
+        //is a single turn that goes down
+        assertTrue(engine.ascendLevel());
+        Entity player = engine.getPlayer();
+        int dx = level.get(player.getX() + 1, player.getY()) == TileType.WALL ? -1 : 1;
+        engine.movePlayer(dx, 0);
+        engine.doTurn();
+        engine.movePlayer(-dx, 0);
+        int frames = view.getFrames();
+        engine.doTurn();
+        assertEquals(2, engine.getDepth());
+        assertEquals(frames + 1, view.getFrames());
+    }
+
+    @Test
+    void waitingOnTheStairsAfterClimbingStaysUp() {
+        walkToStairs();
+        assertTrue(engine.ascendLevel());
+        assertEquals(1, engine.getDepth());
+        for (int t = 0; t < 3; t++) {
+            engine.doTurn();
+            assertEquals(1, engine.getDepth(), "turn " + t);
+        }
+    }
+
+    @Test
+    void steppingOffAndBackOntoTheStairsGoesDown() {
+        walkToStairs();
+        assertTrue(engine.ascendLevel());
+        Entity player = engine.getPlayer();
+        //the arena has walls only around its edge, so one side of the
+        //stairs is open
+        int dx = level.get(player.getX() + 1, player.getY()) == TileType.WALL ? -1 : 1;
+        assertEquals(GameEngine.MOVE_MOVED, engine.movePlayer(dx, 0));
+        engine.doTurn();
+        assertEquals(1, engine.getDepth());
+        engine.movePlayer(-dx, 0);
+        engine.doTurn();
+        assertEquals(2, engine.getDepth());
+    }
+
+    /**
+     * Walks the player across the first level onto its stairs, playing a
+     * turn after each step
+     */
+    private void walkToStairs() {
+        int stairsX = -1;
+        int stairsY = -1;
+        for (int y = 0; y < level.getHeight(); y++) {
+            for (int x = 0; x < level.getWidth(); x++) {
+                if (level.get(x, y) == TileType.STAIRS) {
+                    stairsX = x;
+                    stairsY = y;
+                }
+            }
+        }
+        Entity player = engine.getPlayer();
+        while (engine.getDepth() == 1) {
+            int dx = Integer.signum(stairsX - player.getX());
+            int dy = dx == 0 ? Integer.signum(stairsY - player.getY()) : 0;
+            engine.movePlayer(dx, dy);
+            engine.doTurn();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package uk.ac.bradford.dungeongame;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Checks that a TileMap snapshot keeps the tiles it was taken with while the
+ * original changes, and that whole rows read and write the same tiles as
+ * single ones. The width is not a multiple of CHUNK_SIZE, so the last chunk of
+ * each row is only partly used.
+ */
+class TileMapTest {
+
+    private static final int WIDTH = 70;
+    private static final int HEIGHT = 40;
+
+    @Test
+    void snapshotKeepsItsTilesWhenTheOriginalChanges() {
+        TileMap tiles = level(1);
+        TileMap snapshot = tiles.snapshot();
+        TileMap expected = level(1);
+        //change a tile in a chunk that exists and one in a chunk of walls
+        tiles.set(5, 5, TileType.CHEST);
+        tiles.set(WIDTH - 1, HEIGHT - 1, TileType.STAIRS);
+        byte[] row = new byte[WIDTH];
+        row[40] = (byte) TileType.FLOOR.ordinal();
+        tiles.setRow(20, row);
+        assertSameTiles(expected, snapshot);
+        assertEquals(TileType.CHEST, tiles.get(5, 5));
+        assertEquals(TileType.STAIRS, tiles.get(WIDTH - 1, HEIGHT - 1));
+        assertEquals(TileType.FLOOR, tiles.get(40, 20));
+        assertTrue(snapshot.isSameLevel(tiles));
+        assertNotEquals(tiles.getVersion(), snapshot.getVersion());
+    }
+
+    @Test
+    void snapshotCanNotBeChanged() {
+        TileMap snapshot = level(2).snapshot();
+        assertSame(snapshot, snapshot.snapshot());
+        assertThrows(UnsupportedOperationException.class,
+                () -> snapshot.set(1, 1, TileType.FLOOR));
+        assertThrows(UnsupportedOperationException.class,
+                () -> snapshot.setRow(1, new byte[WIDTH]));
+    }
+
+    @Test
+    void rowsMatchSingleTiles() {
+        Random rng = new Random(3);
+        TileType[] types = TileType.values();
+        TileMap byRow = new TileMap(WIDTH, HEIGHT);
+        TileMap byTile = new TileMap(WIDTH, HEIGHT);
+        byte[] row = new byte[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            //every third row is all walls, which should create no chunks
+            for (int x = 0; x < WIDTH; x++) {
+                row[x] = (byte) (y % 3 == 0 ? 0 : rng.nextInt(types.length));
+                byTile.set(x, y, types[row[x]]);
+            }
+            byRow.setRow(y, row);
+        }
+        assertSameTiles(byTile, byRow);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(byTile.get(x, y), byRow.get(x, y), x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void wallRowOverSnapshotClearsOnlyTheOriginal() {
+        TileMap tiles = level(4);
+        TileMap snapshot = tiles.snapshot();
+        tiles.setRow(10, new byte[WIDTH]);
+        byte[] row = new byte[WIDTH];
+        tiles.getRow(10, row);
+        assertArrayEquals(new byte[WIDTH], row);
+        assertSameTiles(level(4), snapshot);
+    }
+
+    /**
+     * Makes a level with a pattern of tiles that depends on a number, leaving
+     * the right-hand chunks and the bottom rows as walls
+     *
+     * @param n the number the pattern depends on
+     * @return the level
+     */
+    private static TileMap level(int n) {
+        TileMap tiles = new TileMap(WIDTH, HEIGHT);
+        TileType[] types = TileType.values();
+        for (int y = 1; y < 32; y++) {
+            for (int x = 1; x < 64; x++) {
+                tiles.set(x, y, types[(x * 5 + y * 3 + n) % types.length]);
+            }
+        }
+        return tiles;
+    }
+
+    private static void assertSameTiles(TileMap expected, TileMap actual) {
+        byte[] a = new byte[WIDTH];
+        byte[] b = new byte[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            expected.getRow(y, a);
+            actual.getRow(y, b);
+            assertArrayEquals(a, b, "row " + y);
+        }
+    }
+}